@@ -0,0 +1,135 @@
+package amfsmall;
+
+import java.nio.LongBuffer;
+import java.util.Iterator;
+
+/**
+ * An enumeration of the antichains of an interval in blocks of codes, for consumers that work on many antichains at once.
+ *
+ * The code of an antichain is the sequence of words of its bit sequence, words(n) words for an interval on {1,...,n},
+ * so the code of antichain i of a block starts at word i * getWords() and is read back with decode.
+ * The antichains come in the order of {@link AntiChainInterval#fastIterator()} or in the order of
+ * {@link AntiChainInterval#iterator()}, which splits the interval.
+ * not thread safe
+ */
+public class AntiChainBlocks {
+
+	private final int words;
+	private final IntervalCursor cursor;
+	private final Iterator<SmallAntiChain> iterator;
+	private boolean pending;
+
+	/**
+	 * @param 	interval
+	 * 			the interval to enumerate
+	 * @param 	fast
+	 * 			true for the order of fastIterator(), false for the order of iterator()
+	 */
+	AntiChainBlocks(AntiChainInterval interval, boolean fast) {
+		words = words(interval.getTop().sp().maximum());
+		if (fast) {
+			cursor = interval.cursor();
+			iterator = null;
+		}
+		else {
+			cursor = null;
+			iterator = interval.iterator();
+		}
+		pending = advance();
+	}
+
+	/**
+	 * @param 	n
+	 * 			the number of elements
+	 * @return	the number of words in the code of an antichain on {1,...,n}
+	 */
+	public static int words(int n) {
+		return SmallAntiChain.wordsFor(n);
+	}
+
+	/**
+	 * @param 	block
+	 * 			a block of codes
+	 * @param 	offset
+	 * 			the position of the first word of a code in block
+	 * @param 	words
+	 * 			the number of words in a code
+	 * @return	the antichain with that code, with the default universe
+	 */
+	public static SmallAntiChain decode(long[] block, int offset, int words) {
+		return SmallAntiChain.fromWords(block, offset, words);
+	}
+
+	/**
+	 * @return	the number of words in the code of an antichain of this enumeration
+	 */
+	public int getWords() {
+		return words;
+	}
+
+	/**
+	 * @return	true iff there are antichains left
+	 */
+	public boolean hasNext() {
+		return pending;
+	}
+
+	/**
+	 * Write the codes of the next antichains to an array
+	 *
+	 * @param 	block
+	 * 			the array to write to
+	 * @param 	offset
+	 * 			the position in block of the first word written
+	 * @param 	k
+	 * 			the largest number of antichains to write, at most (block.length - offset) / getWords()
+	 * @return	the number of antichains written, less than k only if there are no antichains left
+	 */
+	public int next(long[] block, int offset, int k) {
+		if (k > (block.length - offset) / words)
+			throw new IllegalArgumentException("No room for " + k + " antichains in the block");
+		int res = 0;
+		for (; res < k && pending; res++, offset += words) {
+			SmallAntiChain ac = current();
+			for (int w = 0; w < words; w++)
+				block[offset + w] = ac.getWord(w);
+			pending = advance();
+		}
+		return res;
+	}
+
+	/**
+	 * Write the codes of the next antichains to a buffer, from its position on
+	 *
+	 * @param 	block
+	 * 			the buffer to write to
+	 * @param 	k
+	 * 			the largest number of antichains to write
+	 * @return	the number of antichains written, less than k only if there are no antichains left 
+	 * 			or no room for another code in block
+	 */
+	public int next(LongBuffer block, int k) {
+		int res = 0;
+		for (; res < k && pending && block.remaining() >= words; res++) {
+			SmallAntiChain ac = current();
+			for (int w = 0; w < words; w++)
+				block.put(ac.getWord(w));
+			pending = advance();
+		}
+		return res;
+	}
+
+	/*
+	 * move to the next antichain, false if there is none
+	 */
+	private boolean advance() {
+		return cursor != null ? cursor.advance() : iterator.hasNext();
+	}
+
+	/*
+	 * the antichain to write after advance() returned true
+	 */
+	private SmallAntiChain current() {
+		return cursor != null ? cursor.current() : iterator.next();
+	}
+}
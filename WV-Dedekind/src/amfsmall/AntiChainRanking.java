@@ -0,0 +1,122 @@
+package amfsmall;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The rank of an antichain on {1,...,k} in the order of the encodings, the order of getNext(), and its inverse.
+ *
+ * An antichain with a smaller encoding than x agrees with x on the sets with an index above some set s of x
+ * and does not contain s. The number of such antichains for one s is the number of completions:
+ * the antichains of sets with an index below s that are not below a set of x with an index above s.
+ * The completions are counted by deciding on the sets from the largest index down,
+ * the counts are kept per index and down set, so every count is computed once and shared by all callers.
+ * The antichains on {1,...,k} fit in one word for k at most WordAntiChain.MAXELEMENT;
+ * for more elements the number of down sets to keep is too large.
+ * thread safe
+ */
+final class AntiChainRanking {
+
+	private static final AntiChainRanking[] rankings = new AntiChainRanking[WordAntiChain.MAXELEMENT + 1];
+
+	private final int k;
+	private final int sets;
+	private final Map<Long, Long>[] completions;
+
+	@SuppressWarnings("unchecked")
+	private AntiChainRanking(int k) {
+		this.k = k;
+		sets = 1 << k;
+		completions = (Map<Long, Long>[]) new Map<?, ?>[sets + 1];
+		for (int i = 0; i <= sets; i++)
+			completions[i] = new HashMap<Long, Long>();
+	}
+
+	/**
+	 * @param 	k
+	 * 			the number of elements, at most WordAntiChain.MAXELEMENT
+	 * @return	the ranking of the antichains on {1,...,k}
+	 */
+	static synchronized AntiChainRanking of(int k) {
+		if (k < 0 || k > WordAntiChain.MAXELEMENT)
+			throw new IllegalArgumentException("Cannot rank the antichains on " + k + " elements");
+		if (rankings[k] == null)
+			rankings[k] = new AntiChainRanking(k);
+		return rankings[k];
+	}
+
+	/**
+	 * @return	the number of antichains on {1,...,k}
+	 */
+	synchronized long size() {
+		return count(sets, 0L);
+	}
+
+	/**
+	 * @param 	x
+	 * 			an antichain on {1,...,k}
+	 * @return	the number of antichains on {1,...,k} with a smaller encoding than x
+	 */
+	synchronized long below(SmallAntiChain x) {
+		long word = x.getWord(0);
+		if (x.wordsInUse() > 1 || sets < Long.SIZE && word >>> sets != 0)
+			throw new IllegalArgumentException(x + " is not an antichain on " + k + " elements");
+		long down = 0L;
+		long res = 0;
+		for (int s = sets - 1; s >= 0; s--)
+			if ((word & 1L << s) != 0) {
+				res += count(s, down);
+				down |= subsets(s);
+			}
+		return res;
+	}
+
+	/**
+	 * @param 	rank
+	 * 			the number of antichains with a smaller encoding, 0 <= rank < size()
+	 * @return	the antichain on {1,...,k} with that rank
+	 */
+	synchronized SmallAntiChain antiChain(long rank) {
+		if (rank < 0 || rank >= size())
+			throw new IllegalArgumentException("No antichain of rank " + rank + " on " + k + " elements");
+		long down = 0L;
+		long res = 0L;
+		for (int s = sets - 1; s >= 0; s--) {
+			if ((down & 1L << s) != 0) continue;
+			long without = count(s, down);
+			if (rank < without) continue;
+			rank -= without;
+			res |= 1L << s;
+			down |= subsets(s);
+		}
+		return SmallAntiChain.fromWords(new long[]{res}, 0, 1);
+	}
+
+	/*
+	 * the number of antichains of the sets with an index below i that are not in down,
+	 * the sets of down with an index of at least i are ignored
+	 */
+	private long count(int i, long down) {
+		if (i == 0) return 1;
+		if (i < Long.SIZE) down &= (1L << i) - 1;
+		Long key = down;
+		Long res = completions[i].get(key);
+		if (res != null) return res;
+		int s = i - 1;
+		long count = count(s, down);
+		if ((down & 1L << s) == 0)
+			count += count(s, down | subsets(s));
+		completions[i].put(key, count);
+		return count;
+	}
+
+	/*
+	 * the indices of the subsets of the set with index s
+	 */
+	private static long subsets(int s) {
+		long res = 1L;
+		for (int t = s; t != 0; t = (t - 1) & s)
+			res |= 1L << t;
+		return res;
+	}
+}
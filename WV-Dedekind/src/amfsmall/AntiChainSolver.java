@@ -1,16 +1,16 @@
 package amfsmall;
 
 import java.math.BigInteger;
-import java.util.Set;
+import java.util.Iterator;
 import java.util.SortedMap;
-import java.util.SortedSet;
 import java.util.TreeMap;
-import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import auxiliary.Pair;
+
 /**
  * Solver class for systems of equations in SmallAntiChains
  * 
@@ -24,69 +24,149 @@ public class AntiChainSolver {
 	 * 
 	 * @param 	r1
 	 * @param 	r2
-	 * @return
+	 * @return	2^PatricksExponent(r1, r2), 0 if r1 is not le r2
 	 */
 	public static BigInteger PatricksCoefficient(SmallAntiChain r1, SmallAntiChain r2) {
-		// trivial case, no solutions unless r1 <= r2
-		if (!r1.le(r2)) return BigInteger.ZERO;
-		// trivial case, one solution if r1 == r2
-		if (r1.equals(r2)) return BigInteger.ONE;
-		// treat the case of empty functions separately (most function in AntiChain and AntiChainInterval do not apply)
-		if (r1.isEmpty()) {
-			if (r2.isEmpty()) return BigInteger.ONE; // (empty, empty)
-			return BigInteger.ONE.add(BigInteger.ONE); // (empty, r2), (r2,empty)
-		}
-		return BigInteger.valueOf(1<<(CountConnected(graph(r1,r2.minus(r1)))));
+		int k = PatricksExponent(r1, r2);
+		return k < 0 ? BigInteger.ZERO : BigInteger.ONE.shiftLeft(k);
 	}
 	
 	/**
+	 * The number of connected components of the graph on the sets of r2.minus(r1)
+	 * with an edge between r and s iff their intersection is not below r1.
+	 * The graph is kept as primitive arrays and the components are found by union-find,
+	 * the arrays are reused by each thread, so no objects are created.
 	 * 
-	 * @param r1
-	 * @param r2
-	 * @return
+	 * @param 	r1
+	 * @param 	r2
+	 * @return	the exponent of PatricksCoefficient(r1, r2), -1 if r1 is not le r2
 	 */
-	private static SortedMap<SmallBasicSet, SortedSet<SmallBasicSet>> graph(SmallAntiChain r1, SmallAntiChain r2) {
-		SortedMap<SmallBasicSet, SortedSet<SmallBasicSet>> ret = new TreeMap<SmallBasicSet, SortedSet<SmallBasicSet>>();
-		for (SmallBasicSet r : r2) {
-			SortedSet<SmallBasicSet> cr = new TreeSet<SmallBasicSet>();
-			for (SmallBasicSet s : r2) {
-				if (!r1.ge(r.intersection(s))) cr.add(s);
+	public static int PatricksExponent(SmallAntiChain r1, SmallAntiChain r2) {
+		Scratch s = scratch.get();
+		int len = 1;
+		int used = Math.max(r1.wordsInUse(), r2.wordsInUse());
+		while (len < used) len <<= 1;
+		long[] down = s.down(len);
+		
+		// trivial cases, no solutions unless r1 <= r2, one solution if r1 == r2
+		for (int w = 0; w < len; w++)
+			down[w] = r2.getWord(w);
+		SmallAntiChain.downClosure(down, len, down);
+		boolean equal = true;
+		for (int w = 0; w < len; w++) {
+			long a = r1.getWord(w);
+			if ((a & ~down[w]) != 0) return -1;
+			if (a != r2.getWord(w)) equal = false;
+		}
+		if (equal) return 0;
+		// treat the case of the empty function separately, (empty, r2), (r2,empty)
+		if (r1.wordsInUse() == 0) return 1;
+		
+		// the nodes
+		int m = 0;
+		for (int w = 0; w < len; w++)
+			m += Long.bitCount(r2.getWord(w) & ~r1.getWord(w));
+		int[] nodes = s.nodes(m);
+		int[] parent = s.parent(m);
+		m = 0;
+		for (int w = 0; w < len; w++)
+			for (long bits = r2.getWord(w) & ~r1.getWord(w); bits != 0; bits &= bits - 1) {
+				parent[m] = m;
+				nodes[m++] = (w << 6) + Long.numberOfTrailingZeros(bits);
 			}
-			ret.put(r,cr);
+		
+		// the edges
+		for (int w = 0; w < len; w++)
+			down[w] = r1.getWord(w);
+		SmallAntiChain.downClosure(down, len, down);
+		int components = m;
+		for (int i = 1; i < m; i++)
+			for (int j = 0; j < i; j++) {
+				int x = nodes[i] & nodes[j];
+				if ((down[x >>> 6] & (1L << x)) == 0) {
+					int ri = find(parent, i), rj = find(parent, j);
+					if (ri != rj) {
+						parent[ri] = rj;
+						components--;
+					}
+				}
+			}
+		return components;
+	}
+	
+	/*
+	 * the root of i, halving the path on the way
+	 */
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
 		}
-		return ret;
+		return i;
 	}
-
-	/**
-	 * 
-	 * @param g
-	 * @return
+	
+	/*
+	 * arrays reused by PatricksExponent, one set per thread
 	 */
-	private static long CountConnected(SortedMap<SmallBasicSet, SortedSet<SmallBasicSet>> g) {
-		SortedSet<SmallBasicSet> had = new TreeSet<SmallBasicSet>();
-		long ret = 0;
-		for (SmallBasicSet n : g.keySet()) {
-			if (!had.contains(n)) {
-				ret++;
-				had.add(n);
-				doNode(g,n,had);
-			}
+	private static class Scratch {
+		private long[] down = new long[1];
+		private int[] nodes = new int[64];
+		private int[] parent = new int[64];
+		
+		long[] down(int len) {
+			if (down.length < len) down = new long[len];
+			return down;
+		}
+		
+		int[] nodes(int m) {
+			if (nodes.length < m) nodes = new int[m];
+			return nodes;
+		}
+		
+		int[] parent(int m) {
+			if (parent.length < m) parent = new int[m];
+			return parent;
 		}
-		return ret;
 	}
-
+	
+	private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+	
 	/**
-	 * 
-	 * @param g
-	 * @param n
-	 * @param had
+	 * The generators of the equivalence classes the drivers can choose from
 	 */
-	private static void doNode(SortedMap<SmallBasicSet, SortedSet<SmallBasicSet>> g, SmallBasicSet n, SortedSet<SmallBasicSet> had) {
-		for (SmallBasicSet m : g.get(n)) {
-			if (had.add(m)) doNode(g,m,had);
+	public static enum Generator {
+		/** {@link AntiChainSolver#equivalenceClasses(int, ExecutorService...)} */
+		ALGORITHM7,
+		/** {@link AntiChainSolver#orderlyEquivalenceClasses(int, ExecutorService...)} */
+		ORDERLY;
+
+		/**
+		 * @param 	till
+		 * @param	pools
+		 * 			as for the generator
+		 * @return	the equivalence classes of AMF(n) for n = 0 .. till inclusive, computed by this generator
+		 */
+		public SortedMap<BigInteger, Long>[] equivalenceClasses(int till, ExecutorService... pools) {
+			return this == ORDERLY ? orderlyEquivalenceClasses(till, pools) : AntiChainSolver.equivalenceClasses(till, pools);
+		}
+
+		/**
+		 * @param 	args
+		 * 			the arguments of a driver
+		 * @return	ORDERLY for an option -orderly, ALGORITHM7 otherwise
+		 */
+		public static Generator of(String[] args) {
+			for (String a : args)
+				if (a.equals("-orderly")) return ORDERLY;
+			return ALGORITHM7;
 		}
 	}
-	
+
 	/**
 	 * compute the equivalences of AMF(n) for n = 0 .. till inclusive
 	 * in BigInteger representation
@@ -117,6 +197,28 @@ public class AntiChainSolver {
 		return reS;
 	}
 
+	/**
+	 * compute the equivalences of AMF(n) for n = 0 .. till inclusive
+	 * in BigInteger representation, the same maps as {@link #equivalenceClasses(int, ExecutorService...)}.
+	 * The classes are generated by canonical augmentation: every class is produced once
+	 * with the size computed from its automorphisms, the other antichains of a class are never enumerated.
+	 * 
+	 * @param 	till
+	 * @param	pools
+	 * 			The first pool of pools is being used for calculation. If no pools are given, 
+	 * 			{@link Executors#newFixedThreadPool(int)} will provide a pool with 1 thread.
+	 * @return 	array of maps, mapping each biginteger to the size of the equivalence class it represents
+	 */
+	public static SortedMap<BigInteger, Long>[] orderlyEquivalenceClasses(int till, ExecutorService... pools) {
+		int temp = pools.length;
+		if(temp < 1)
+			pools = new ExecutorService[]{ Executors.newFixedThreadPool(1) };
+		SortedMap<BigInteger, Long>[] reS = CanonicalAugmentation.equivalenceClasses(till, pools[0]);
+		if(temp < 1)
+			pools[0].shutdown();
+		return reS;
+	}
+
 	/**
 	 * (this is algorithm 7 in "Ten Beautiful formula...")
 	 * Computing the representatives of AM F (n + 1) with span n + 1 from the representatives of AMF(n) 
@@ -130,7 +232,7 @@ public class AntiChainSolver {
 	 * 			Executorservice that allows to execute runnables and callables by a certain amount of threads.
 	 * @return 	return maps the equivalence classes of dimensions n+1 (in BigInteger representation) to their sizes
 	 */
-	private static SortedMap<BigInteger,Long> algorithm7(int n, final SortedMap<BigInteger, Long> S, ExecutorService pool) {
+	private static SortedMap<BigInteger,Long> algorithm7(final int n, final SortedMap<BigInteger, Long> S, ExecutorService pool) {
 		final SortedMap<BigInteger,Long> S1 = new TreeMap<BigInteger, Long>();
 		final SmallAntiChain alfa = SmallAntiChain.universeAntiChain(n);
 		final SmallAntiChain u = SmallAntiChain.universeAntiChain(n+1);
@@ -144,12 +246,21 @@ public class AntiChainSolver {
 				@Override
 				public void run() {
 					SmallAntiChain t = SmallAntiChain.decode(tCode);
-					Set<int[]> rtsymm = t.join(l).symmetryGroup();
+					SmallAntiChain tl = SmallAntiChain.joinInto(new SmallAntiChain(), t, l);
+					// the automorphisms of tl follow from those of t,
+					// as with tl.symmetryGroup() only a span {1,...,n+1} is reduced
+					boolean full = t.sp().toLong() == (1L << n) - 1;
+					PermutationGroup tsymm = full ? PermutationGroup.automorphisms(t, n) : PermutationGroup.trivial(n);
+					PermutationGroup rtsymm = full ? tsymm.joinSingleton(t) : PermutationGroup.trivial(n + 1);
 					SortedMap<BigInteger, Long> St = new TreeMap<BigInteger, Long>();
+					// the automorphisms of t fix n+1 and map the interval onto itself,
+					// only one antichain of each of their orbits is visited
 					//TODO: lose deprecated...
-					for (SmallAntiChain x : new AntiChainInterval(t.join(l),u.omicron(t, alfa))) {
-						BigInteger b = x.standard(rtsymm).encode(); 
-						Storage.store(St, b);
+					Iterator<Pair<SmallAntiChain, Long>> orbits = new AntiChainInterval(tl,u.omicron(t, alfa)).orbitIterator(tsymm);
+					while (orbits.hasNext()) {
+						Pair<SmallAntiChain, Long> x = orbits.next();
+						BigInteger b = rtsymm.minimumImage(x.fst).encode(); 
+						Storage.store(St, b, x.snd);
 					}
 					for (BigInteger b : St.keySet()) {
 						SmallAntiChain x = SmallAntiChain.decode(b);
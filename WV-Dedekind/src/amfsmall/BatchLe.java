@@ -0,0 +1,120 @@
+package amfsmall;
+
+/**
+ * Kernels testing many packed antichains against one down closure at once.
+ *
+ * The antichains are rows of stride longs in one array, row k occupying
+ * rows[k * stride],...,rows[k * stride + stride - 1]. A row r is below a target t
+ * iff (r[w] & ~t[w]) == 0 for every w, so with t the down closure of f
+ * (see {@link SmallAntiChain#downClosure(long[])}) this is r le f.
+ * Extra columns with the same subset semantics, such as a signature, can be added to the rows.
+ *
+ * The loops are branch free and unrolled for rows of one word,
+ * which is the case for all antichains on at most six elements.
+ */
+public final class BatchLe {
+
+	private BatchLe() {
+	}
+
+	/**
+	 * The rows below a target as a bitmap
+	 *
+	 * @param 	rows
+	 * 			the packed rows
+	 * @param 	stride
+	 * 			the number of longs in a row
+	 * @param 	from
+	 * 			the first row to test
+	 * @param 	to
+	 * 			the row after the last row to test
+	 * @param 	target
+	 * 			the target, stride longs
+	 * @param 	bitmap
+	 * 			at least (to - from + 63) / 64 longs, bit k is set iff row from + k is below target
+	 * @return	the number of rows below target
+	 */
+	public static int below(long[] rows, int stride, int from, int to, long[] target, long[] bitmap) {
+		int found = 0;
+		for (int k = from; k < to; k += 64) {
+			int end = Math.min(k + 64, to);
+			long bits = 0L;
+			if (stride == 1) {
+				long t = ~target[0];
+				for (int i = k; i < end; i++)
+					bits |= hit(rows[i] & t) << (i - k);
+			} else {
+				for (int i = k; i < end; i++)
+					bits |= hit(miss(rows, i * stride, stride, target)) << (i - k);
+			}
+			bitmap[(k - from) >>> 6] = bits;
+			found += Long.bitCount(bits);
+		}
+		return found;
+	}
+
+	/**
+	 * The rows below a target as a list of row numbers
+	 *
+	 * @param 	rows
+	 * 			the packed rows
+	 * @param 	stride
+	 * 			the number of longs in a row
+	 * @param 	from
+	 * 			the first row to test
+	 * @param 	to
+	 * 			the row after the last row to test
+	 * @param 	target
+	 * 			the target, stride longs
+	 * @param 	result
+	 * 			the array to store the numbers of the rows below target in,
+	 * 			with room for to - from numbers after the first found
+	 * @param 	found
+	 * 			the number of entries of result already in use
+	 * @return	found plus the number of rows below target
+	 */
+	public static int below(long[] rows, int stride, int from, int to, long[] target, int[] result, int found) {
+		if (stride == 1) {
+			long t = ~target[0];
+			int i = from;
+			for (; i + 4 <= to; i += 4) {
+				long m0 = rows[i] & t, m1 = rows[i + 1] & t, m2 = rows[i + 2] & t, m3 = rows[i + 3] & t;
+				result[found] = i;
+				found += (int) hit(m0);
+				result[found] = i + 1;
+				found += (int) hit(m1);
+				result[found] = i + 2;
+				found += (int) hit(m2);
+				result[found] = i + 3;
+				found += (int) hit(m3);
+			}
+			for (; i < to; i++) {
+				result[found] = i;
+				found += (int) hit(rows[i] & t);
+			}
+		} else {
+			for (int i = from; i < to; i++) {
+				result[found] = i;
+				found += (int) hit(miss(rows, i * stride, stride, target));
+			}
+		}
+		return found;
+	}
+
+	/*
+	 * The bits of a row that are missing in the target
+	 */
+	private static long miss(long[] rows, int offset, int stride, long[] target) {
+		long miss = 0L;
+		for (int w = 0; w < stride; w++)
+			miss |= rows[offset + w] & ~target[w];
+		return miss;
+	}
+
+	/*
+	 * 1 if nothing is missing, 0 otherwise
+	 */
+	private static long hit(long miss) {
+		return ((miss | -miss) >>> 63) ^ 1L;
+	}
+}
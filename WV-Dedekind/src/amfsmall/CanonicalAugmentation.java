@@ -0,0 +1,221 @@
+package amfsmall;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * The equivalence classes of antichains on {1,...,n} under permutation of the elements,
+ * generated by canonical augmentation so that every class is produced exactly once.
+ *
+ * The antichains form a tree: the parent of a nonempty antichain c is c without its canonical deletion,
+ * a set of c that only depends on the class of c, up to the automorphisms of c.
+ * An antichain is extended with one set of every orbit of its automorphisms on the sets that can be added,
+ * and an extension is kept iff the added set is in the orbit of its canonical deletion.
+ * The canonical deletion is a set with the largest invariant (size, degrees of its elements, disjoint sets),
+ * among sets in different orbits with the same invariant the one with the largest image under
+ * {@link CanonicalForm#canonicalLabelling(int[], int, int)}, so the labelling is only computed for ties.
+ * Antichains that are equivalent to one already produced are never generated.
+ */
+final class CanonicalAugmentation {
+
+	/*
+	 * the number of subtrees that are handed to the pool
+	 */
+	private static final int TASKS = 256;
+
+	private final int n;
+	private final long[] factorial;
+	private final SortedMap<BigInteger, Long>[] classes;
+
+	@SuppressWarnings("unchecked")
+	private CanonicalAugmentation(int n) {
+		this.n = n;
+		factorial = new long[n + 1];
+		factorial[0] = 1;
+		for (int i = 1; i <= n; i++)
+			factorial[i] = i * factorial[i - 1];
+		classes = (SortedMap<BigInteger, Long>[]) new SortedMap<?, ?>[n + 1];
+		for (int k = 0; k <= n; k++)
+			classes[k] = new TreeMap<BigInteger, Long>();
+	}
+
+	/**
+	 * Generate the equivalence classes of the antichains on {1,...,till}
+	 *
+	 * @param 	till
+	 * 			the number of elements, at most SmallBasicSet.MAXELEMENT
+	 * @param 	pool
+	 * 			the pool that generates the subtrees below the first levels
+	 * @return	the same maps as {@link AntiChainSolver#equivalenceClasses(int, ExecutorService...)}:
+	 * 			map k takes the encoding of the standard form of every class of antichains with a span
+	 * 			of k elements to the number of antichains on {1,...,k} in that class
+	 */
+	static SortedMap<BigInteger, Long>[] equivalenceClasses(int till, ExecutorService pool) {
+		final CanonicalAugmentation res = new CanonicalAugmentation(till);
+		// the first levels are generated here until there are enough subtrees
+		List<Node> frontier = new ArrayList<Node>();
+		frontier.add(new Node(new int[0], PermutationGroup.symmetric(till)));
+		while (!frontier.isEmpty() && frontier.size() < TASKS) {
+			List<Node> next = new ArrayList<Node>();
+			for (Node x : frontier) {
+				res.store(x);
+				next.addAll(res.children(x));
+			}
+			frontier = next;
+		}
+
+		List<Future<CanonicalAugmentation>> subtrees = new ArrayList<Future<CanonicalAugmentation>>();
+		for (final Node x : frontier)
+			subtrees.add(pool.submit(new Callable<CanonicalAugmentation>() {
+
+				@Override
+				public CanonicalAugmentation call() {
+					CanonicalAugmentation sub = new CanonicalAugmentation(res.n);
+					sub.extend(x);
+					return sub;
+				}
+
+			}));
+		try {
+			for (Future<CanonicalAugmentation> f : subtrees) {
+				CanonicalAugmentation sub = f.get();
+				for (int k = 0; k <= till; k++)
+					res.classes[k].putAll(sub.classes[k]);
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+		}
+		return res.classes;
+	}
+
+	/*
+	 * store x and all its descendants
+	 */
+	private void extend(Node x) {
+		store(x);
+		for (Node c : children(x))
+			extend(c);
+	}
+
+	/*
+	 * store the class of x with the number of antichains on its span in that class
+	 */
+	private void store(Node x) {
+		int span = 0;
+		for (int s : x.sets)
+			span |= s;
+		int k = Integer.bitCount(span);
+		long[] words = new long[SmallAntiChain.wordsFor(n)];
+		for (int s : x.sets)
+			words[s >>> 6] |= 1L << s;
+		BigInteger code = SmallAntiChain.fromWords(words, 0, words.length).standard().encode();
+		// the automorphisms of x permute the elements outside the span freely
+		classes[k].put(code, factorial[k] * factorial[n - k] / x.automorphisms.size());
+	}
+
+	/*
+	 * the extensions of x with one set of every orbit of the automorphisms of x that are kept
+	 */
+	private List<Node> children(Node x) {
+		List<Node> res = new ArrayList<Node>();
+		int m = x.sets.length;
+		candidate:
+		for (int s = 0; s < 1 << n; s++) {
+			for (int t : x.sets) {
+				int u = s & t;
+				if (u == s || u == t) continue candidate;
+			}
+			for (int p = 0; p < x.automorphisms.size(); p++)
+				if (x.automorphisms.imageOfSet(p, s) < s) continue candidate;
+			int[] c = Arrays.copyOf(x.sets, m + 1);
+			c[m] = s;
+			PermutationGroup automorphisms = accept(c);
+			if (automorphisms != null)
+				res.add(new Node(c, automorphisms));
+		}
+		return res;
+	}
+
+	/*
+	 * the automorphisms of c if its last set is in the orbit of the canonical deletion, null otherwise
+	 */
+	private PermutationGroup accept(int[] c) {
+		int m = c.length, last = m - 1;
+		long[] invariant = invariants(c);
+		long max = 0;
+		for (long i : invariant)
+			max = Math.max(max, i);
+		if (invariant[last] < max)
+			return null;
+
+		PermutationGroup automorphisms = PermutationGroup.automorphisms(c, m, n);
+		boolean tie = false;
+		for (int t = 0; t < last && !tie; t++)
+			tie = invariant[t] == max && !sameOrbit(automorphisms, c[t], c[last]);
+		if (!tie)
+			return automorphisms;
+
+		// the set of largest invariant with the largest image under a canonical labelling
+		int[] labelling = CanonicalForm.canonicalLabelling(c, m, n);
+		int deletion = -1, largest = -1;
+		for (int t = 0; t < m; t++)
+			if (invariant[t] == max) {
+				int image = 0;
+				for (int bits = c[t]; bits != 0; bits &= bits - 1)
+					image |= 1 << labelling[Integer.numberOfTrailingZeros(bits)];
+				if (image > largest) {
+					largest = image;
+					deletion = t;
+				}
+			}
+		return sameOrbit(automorphisms, c[deletion], c[last]) ? automorphisms : null;
+	}
+
+	/*
+	 * for every set of c: its size, the sum of the degrees of its elements and the number of sets of c it is disjoint from
+	 */
+	private long[] invariants(int[] c) {
+		int[] degree = new int[n];
+		for (int s : c)
+			for (int bits = s; bits != 0; bits &= bits - 1)
+				degree[Integer.numberOfTrailingZeros(bits)]++;
+		long[] res = new long[c.length];
+		for (int t = 0; t < c.length; t++) {
+			long sum = 0, disjoint = 0;
+			for (int bits = c[t]; bits != 0; bits &= bits - 1)
+				sum += degree[Integer.numberOfTrailingZeros(bits)];
+			for (int s : c)
+				if ((s & c[t]) == 0) disjoint++;
+			res[t] = ((long) Integer.bitCount(c[t]) << 40) | (sum << 20) | disjoint;
+		}
+		return res;
+	}
+
+	private static boolean sameOrbit(PermutationGroup group, int s, int t) {
+		for (int p = 0; p < group.size(); p++)
+			if (group.imageOfSet(p, s) == t) return true;
+		return false;
+	}
+
+	/*
+	 * an antichain in the tree with its automorphisms
+	 */
+	private static final class Node {
+
+		private final int[] sets;
+		private final PermutationGroup automorphisms;
+
+		Node(int[] sets, PermutationGroup automorphisms) {
+			this.sets = sets;
+			this.automorphisms = automorphisms;
+		}
+	}
+}
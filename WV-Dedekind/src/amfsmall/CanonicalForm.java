@@ -0,0 +1,233 @@
+package amfsmall;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Canonical forms and automorphisms of families of subsets of {1,...,k} without trying all k! permutations.
+ *
+ * The canonical form is the image with the smallest encoding, the same as {@link SmallAntiChain#standard()}.
+ * The encodings of two families compare as the lists of their set indices in decreasing order,
+ * so the elements are placed from the highest position down. After some elements are placed,
+ * every set has a known high part and a number of remaining elements, and its index is at least
+ * the high part plus the smallest index with that many elements. These invariants bound all completions:
+ * candidates for the next position are tried in the order of their bounds, a candidate is dropped as soon
+ * as its bound is not smaller than the best form found, and of two candidates that are exchanged by a
+ * symmetry of the partial placement only one is tried.
+ *
+ * The automorphisms are found by mapping the elements in increasing order, an element only to an element
+ * that is contained in as many sets of every size, and checking every set as soon as all its elements are mapped.
+ */
+final class CanonicalForm {
+
+	private final int k;
+	private final int m;
+
+	/*
+	 * high[d][s] is the high part of set s with d elements placed, rest[d][s] are its elements that are not placed yet
+	 */
+	private final int[][] high;
+	private final int[][] rest;
+	private final int[] scratch;
+	private int[] best;
+	/*
+	 * placed[d] is the element placed at depth d, labelling maps element e + 1 to labelling[e] + 1 for the best image
+	 */
+	private final int[] placed;
+	private final int[] labelling;
+
+	private CanonicalForm(int[] sets, int m, int k) {
+		this.k = k;
+		this.m = m;
+		high = new int[k + 1][m];
+		rest = new int[k + 1][m];
+		System.arraycopy(sets, 0, rest[0], 0, m);
+		scratch = new int[m];
+		placed = new int[k];
+		labelling = new int[k];
+	}
+
+	/**
+	 * The smallest image of a family under the permutations of {1,...,k}
+	 *
+	 * @param 	sets
+	 * 			the bit sequences of the sets of the family, subsets of {1,...,k}
+	 * @param 	m
+	 * 			the number of sets
+	 * @param 	k
+	 * 			the number of elements, at most SmallBasicSet.MAXELEMENT
+	 * @return	the bit sequences of the sets of the smallest image, in increasing order
+	 */
+	static int[] minimalImage(int[] sets, int m, int k) {
+		CanonicalForm f = new CanonicalForm(sets, m, k);
+		f.search(0, (1 << k) - 1);
+		return f.best;
+	}
+
+	/**
+	 * A permutation of {1,...,k} that maps a family onto its smallest image.
+	 * Any two such permutations differ by an automorphism of the family.
+	 *
+	 * @param 	sets
+	 * 			the bit sequences of the sets of the family, subsets of {1,...,k}
+	 * @param 	m
+	 * 			the number of sets
+	 * @param 	k
+	 * 			the number of elements, at most SmallBasicSet.MAXELEMENT
+	 * @return	the permutation as an array p with element e mapped to element p[e - 1] + 1,
+	 * 			so that the images of the sets are minimalImage(sets, m, k)
+	 */
+	static int[] canonicalLabelling(int[] sets, int m, int k) {
+		CanonicalForm f = new CanonicalForm(sets, m, k);
+		f.search(0, (1 << k) - 1);
+		return f.labelling;
+	}
+
+	/*
+	 * try all placements of the elements in remaining at the positions below k - depth
+	 */
+	private void search(int depth, int remaining) {
+		int[] h = high[depth], r = rest[depth];
+		if (remaining == 0) {
+			int[] res = Arrays.copyOf(h, m);
+			Arrays.sort(res);
+			if (best == null || compare(res, best) < 0) {
+				best = res;
+				for (int d = 0; d < k; d++)
+					labelling[placed[d]] = k - 1 - d;
+			}
+			return;
+		}
+		int free = k - depth;
+
+		// one candidate per class of elements exchanged by a symmetry of the placement
+		int[] keys = keys(h, r, -1, -1);
+		int count = 0;
+		int[] candidates = new int[free];
+		int[][] bounds = new int[free][];
+		candidate:
+		for (int e = 0; e < k; e++) {
+			if ((remaining & (1 << e)) == 0) continue;
+			for (int c = 0; c < count; c++)
+				if (Arrays.equals(keys, keys(h, r, e, candidates[c]))) continue candidate;
+			int[] bound = new int[m];
+			for (int s = 0; s < m; s++) {
+				int hs = (r[s] & (1 << e)) != 0 ? h[s] | (1 << (free - 1)) : h[s];
+				bound[s] = hs | ((1 << Integer.bitCount(r[s] & ~(1 << e))) - 1);
+			}
+			Arrays.sort(bound);
+			// insert in the order of the bounds
+			int c = count++;
+			while (c > 0 && compare(bounds[c - 1], bound) > 0) {
+				candidates[c] = candidates[c - 1];
+				bounds[c] = bounds[c - 1];
+				c--;
+			}
+			candidates[c] = e;
+			bounds[c] = bound;
+		}
+
+		int[] nh = high[depth + 1], nr = rest[depth + 1];
+		for (int c = 0; c < count; c++) {
+			if (best != null && compare(bounds[c], best) >= 0)
+				break;
+			int e = candidates[c];
+			placed[depth] = e;
+			for (int s = 0; s < m; s++) {
+				nh[s] = (r[s] & (1 << e)) != 0 ? h[s] | (1 << (free - 1)) : h[s];
+				nr[s] = r[s] & ~(1 << e);
+			}
+			search(depth + 1, remaining & ~(1 << e));
+		}
+	}
+
+	/*
+	 * the sorted keys of the sets with the elements a and b of the remaining elements exchanged
+	 */
+	private int[] keys(int[] h, int[] r, int a, int b) {
+		int[] res = new int[m];
+		for (int s = 0; s < m; s++) {
+			int rs = r[s];
+			if (a >= 0 && ((rs >>> a) & 1) != ((rs >>> b) & 1))
+				rs ^= (1 << a) | (1 << b);
+			res[s] = (h[s] << SmallBasicSet.MAXELEMENT) | rs;
+		}
+		Arrays.sort(res);
+		return res;
+	}
+
+	/*
+	 * compare sorted lists of set indices from the largest down
+	 */
+	private static int compare(int[] a, int[] b) {
+		for (int i = a.length - 1; i >= 0; i--)
+			if (a[i] != b[i])
+				return a[i] < b[i] ? -1 : 1;
+		return 0;
+	}
+
+	/**
+	 * The permutations of {1,...,k} that map a family onto itself
+	 *
+	 * @param 	sets
+	 * 			the bit sequences of the sets of the family, subsets of {1,...,k}
+	 * @param 	m
+	 * 			the number of sets
+	 * @param 	k
+	 * 			the number of elements, at most SmallBasicSet.MAXELEMENT
+	 * @return	the automorphisms, as arrays p with element e mapped to element p[e - 1] + 1
+	 */
+	static List<int[]> automorphisms(int[] sets, int m, int k) {
+		// the number of sets of every size containing an element
+		long[] invariant = new long[k];
+		int[][] counts = new int[k][k + 1];
+		for (int s = 0; s < m; s++)
+			for (int bits = sets[s]; bits != 0; bits &= bits - 1)
+				counts[Integer.numberOfTrailingZeros(bits)][Integer.bitCount(sets[s])]++;
+		for (int e = 0; e < k; e++)
+			invariant[e] = Arrays.hashCode(counts[e]);
+
+		// the sets by their largest element
+		int[][] byMax = new int[k][];
+		int[] fill = new int[k];
+		for (int s = 0; s < m; s++)
+			if (sets[s] != 0) fill[31 - Integer.numberOfLeadingZeros(sets[s])]++;
+		for (int e = 0; e < k; e++)
+			byMax[e] = new int[fill[e]];
+		Arrays.fill(fill, 0);
+		for (int s = 0; s < m; s++)
+			if (sets[s] != 0) {
+				int e = 31 - Integer.numberOfLeadingZeros(sets[s]);
+				byMax[e][fill[e]++] = sets[s];
+			}
+
+		boolean[] member = new boolean[1 << k];
+		for (int s = 0; s < m; s++)
+			member[sets[s]] = true;
+
+		List<int[]> res = new ArrayList<int[]>();
+		automorphisms(0, new int[k], 0, invariant, byMax, member, res);
+		return res;
+	}
+
+	private static void automorphisms(int e, int[] image, int used, long[] invariant, int[][] byMax, boolean[] member, List<int[]> res) {
+		int k = image.length;
+		if (e == k) {
+			res.add(Arrays.copyOf(image, k));
+			return;
+		}
+		candidate:
+		for (int f = 0; f < k; f++) {
+			if ((used & (1 << f)) != 0 || invariant[f] != invariant[e]) continue;
+			image[e] = f;
+			for (int set : byMax[e]) {
+				int mapped = 0;
+				for (int bits = set; bits != 0; bits &= bits - 1)
+					mapped |= 1 << image[Integer.numberOfTrailingZeros(bits)];
+				if (!member[mapped]) continue candidate;
+			}
+			automorphisms(e + 1, image, used | (1 << f), invariant, byMax, member, res);
+		}
+	}
+}
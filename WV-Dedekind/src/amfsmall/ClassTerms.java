@@ -0,0 +1,129 @@
+package amfsmall;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import auxiliary.PartialSum;
+
+/**
+ * The terms of the sum for a Dedekind number, collected per equivalence class of functions.
+ *
+ * The term of a function r2 is the sum over the representatives r1 le r2 of weight(r1) * 2^P(r1, r2),
+ * times the size of [r2, {N}]. The first factor depends on r2 itself, as only representatives are summed,
+ * but the size of the interval only depends on the class of r2. The first factor is summed over the class
+ * and multiplied once, so the size of the intervals, the bulk of the work, is computed once per class
+ * instead of once per function.
+ * The arrays and the graph used for one function are reused by each thread.
+ * immutable, can be shared between threads
+ */
+public class ClassTerms {
+
+	/**
+	 * The outer loops of the drivers
+	 */
+	public static enum Loop {
+		/** every function separately */
+		FUNCTIONS,
+		/** one function of every class, with addTerms */
+		CLASSES,
+		/** both, the results are compared */
+		VERIFY;
+
+		/**
+		 * @param 	args
+		 * 			the arguments of a driver
+		 * @return	CLASSES for an option -classes, VERIFY for an option -verify, FUNCTIONS otherwise
+		 */
+		public static Loop of(String[] args) {
+			Loop res = FUNCTIONS;
+			for (String a : args)
+				if (a.equals("-classes")) res = CLASSES;
+				else if (a.equals("-verify")) res = VERIFY;
+			return res;
+		}
+
+		/**
+		 * @param 	args
+		 * 			the arguments of a driver
+		 * @return	the arguments without the options, the arguments starting with -
+		 */
+		public static String[] positional(String[] args) {
+			List<String> res = new ArrayList<String>();
+			for (String a : args)
+				if (!a.startsWith("-")) res.add(a);
+			return res.toArray(new String[res.size()]);
+		}
+	}
+
+	private final DownSetIndex index;
+	private final PatricksCache cache;
+	private final PermutationGroup group;
+	private final SmallAntiChain upper;
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch(index.getTable().size());
+		}
+	};
+
+	/**
+	 * @param 	index
+	 * 			the index over the representatives with their weights
+	 * @param 	cache
+	 * 			the cache for the coefficients of Patrick, null to compute them per function in a batch
+	 */
+	public ClassTerms(DownSetIndex index, PatricksCache cache) {
+		this.index = index;
+		this.cache = cache;
+		int n = index.getTable().getN();
+		group = PermutationGroup.symmetric(n);
+		upper = SmallAntiChain.oneSetAntiChain(SmallBasicSet.universe(n));
+	}
+
+	/**
+	 * Add the terms of all functions in the class of function to a sum
+	 *
+	 * @param 	function
+	 * 			an antichain on {1,...,n}
+	 * @param 	res
+	 * 			the sum to add to
+	 * @return	the number of pairs (r1, r2) evaluated
+	 */
+	public long addTerms(SmallAntiChain function, PartialSum res) {
+		RepresentativeTable functions = index.getTable();
+		PartialSum sumP = res.zero();
+		long evaluations = 0;
+		Scratch s = scratch.get();
+		int[] below = s.below;
+		int[] exponents = s.exponents;
+		for (SmallAntiChain r2 : group.orbit(function)) {
+			int found = index.below(r2, below);
+			if (cache == null) {
+				s.graph.setFunction(r2);
+				s.graph.exponents(functions, below, found, exponents);
+			} else
+				for (int k = 0; k < found; k++)
+					exponents[k] = cache.exponent(functions.representative(below[k]), r2);
+			for (int k = 0; k < found; k++)
+				sumP.addShifted(functions.weight(below[k]), exponents[k]);
+			evaluations += found;
+		}
+		sumP.multiply(new AntiChainInterval(function, upper).latticeSize());
+		res.add(sumP);
+		return evaluations;
+	}
+
+	/*
+	 * the arrays and the graph used for the terms of one function, one set per thread
+	 */
+	private static class Scratch {
+		private final int[] below;
+		private final int[] exponents;
+		private final PatricksGraph graph = new PatricksGraph();
+
+		private Scratch(int size) {
+			below = new int[size];
+			exponents = new int[size];
+		}
+	}
+}
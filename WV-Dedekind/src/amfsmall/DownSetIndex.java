@@ -0,0 +1,139 @@
+package amfsmall;
+
+/**
+ * An index over the representatives in a RepresentativeTable to find
+ * the representatives r with r le f for a given antichain f without testing all of them.
+ *
+ * The representatives are grouped by their span, a group is only considered if its span
+ * is a subset of the span of f. The representatives of a group are packed in consecutive rows
+ * and tested together by {@link BatchLe}. For representatives of more than one word the row 
+ * starts with a signature, so that a representative is only tested completely
+ * if every pair of elements contained in a set of r is contained in a set of f.
+ * immutable, can be shared between threads
+ */
+public class DownSetIndex {
+
+	private final RepresentativeTable table;
+
+	/*
+	 * spans[g] is the span of group g, group g consists of the representatives 
+	 * members[start[g]],...,members[start[g + 1] - 1], 
+	 * row k of rows is the (signature and) representation of members[k]
+	 */
+	private final long[] spans;
+	private final int[] start;
+	private final int[] members;
+	private final int stride;
+	private final long[] rows;
+
+	/**
+	 * Create an index over all representatives in a table
+	 *
+	 * @param 	table
+	 * 			the representatives to index
+	 */
+	public DownSetIndex(RepresentativeTable table) {
+		this.table = table;
+		int size = table.size();
+		int groups = 1 << table.getN();
+
+		// count the representatives per span
+		int[] count = new int[groups + 1];
+		long[] span = new long[size];
+		for (int i = 0; i < size; i++) {
+			span[i] = table.representative(i).sp().toLong();
+			count[(int) span[i] + 1]++;
+		}
+
+		// keep only the spans that occur
+		int used = 0;
+		for (int s = 0; s < groups; s++)
+			if (count[s + 1] > 0) used++;
+		spans = new long[used];
+		start = new int[used + 1];
+		int[] group = new int[groups];
+		int g = 0;
+		for (int s = 0; s < groups; s++)
+			if (count[s + 1] > 0) {
+				spans[g] = s;
+				start[g + 1] = start[g] + count[s + 1];
+				group[s] = g++;
+			}
+
+		members = new int[size];
+		int[] fill = new int[used];
+		for (int i = 0; i < size; i++) {
+			int k = group[(int) span[i]];
+			members[start[k] + fill[k]++] = i;
+		}
+
+		int width = table.width();
+		stride = width == 1 ? 1 : width + 1;
+		rows = new long[size * stride];
+		for (int k = 0; k < size; k++) {
+			int offset = k * stride;
+			if (width > 1)
+				rows[offset++] = signature(table.representative(members[k]));
+			for (int w = 0; w < width; w++)
+				rows[offset + w] = table.code(members[k], w);
+		}
+	}
+
+	/**
+	 * The pairs of elements that occur together in a set of an antichain.
+	 * Pair {a, b} with a < b corresponds to bit (b-1)(b-2)/2 + a-1 modulo 64,
+	 * so r le f implies that the signature of r is contained in the signature of f.
+	 *
+	 * @param 	ac
+	 * 			the antichain
+	 * @return	the signature of ac
+	 */
+	static long signature(SmallAntiChain ac) {
+		long res = 0L;
+		for (SmallBasicSet s : ac) {
+			long set = s.toLong();
+			for (long bs = set & (set - 1); bs != 0; bs &= bs - 1) {
+				int b = Long.numberOfTrailingZeros(bs);
+				int base = b * (b - 1) / 2;
+				for (long as = set & ((1L << b) - 1); as != 0; as &= as - 1)
+					res |= 1L << (base + Long.numberOfTrailingZeros(as));
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Find the representatives below an antichain
+	 *
+	 * @param 	function
+	 * 			an antichain on {1,...,table.getN()}
+	 * @param 	result
+	 * 			an array with room for all positions in the table, filled with the positions found
+	 * @return	the number of positions i stored in result, these are exactly the positions with
+	 * 			table.representative(i).le(function), in no particular order
+	 */
+	public int below(SmallAntiChain function, int[] result) {
+		long span = function.sp().toLong();
+		long[] down = table.downClosure(function);
+		long[] target = down;
+		if (stride > 1) {
+			target = new long[stride];
+			target[0] = signature(function);
+			System.arraycopy(down, 0, target, 1, down.length);
+		}
+		int found = 0;
+		for (int g = 0; g < spans.length; g++)
+			if ((spans[g] & ~span) == 0)
+				found = BatchLe.below(rows, stride, start[g], start[g + 1], target, result, found);
+		for (int k = 0; k < found; k++)
+			result[k] = members[result[k]];
+		return found;
+	}
+
+	/**
+	 * @return the table indexed by this
+	 */
+	public RepresentativeTable getTable() {
+		return table;
+	}
+}
@@ -0,0 +1,70 @@
+package amfsmall;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A walk through the antichains of an interval in the order of {@link AntiChainInterval#fastIterator()}.
+ *
+ * One antichain is stepped by {@link SmallAntiChain#nextInPlace()}, so after the buffers of that antichain
+ * have grown nothing is allocated per step. The antichain returned by current() is the same object at every step
+ * and only valid until the next call of advance(): a caller that keeps it keeps a copy.
+ * not thread safe
+ */
+public class IntervalCursor {
+
+	private final SmallAntiChain top;
+	private final SmallAntiChain current;
+	private boolean started;
+	private boolean finished;
+
+	/**
+	 * @param 	interval
+	 * 			the interval to walk through, its boundaries included
+	 */
+	IntervalCursor(AntiChainInterval interval) {
+		this(interval.getBottom(), interval.getTop(), !interval.getBottom().le(interval.getTop()));
+	}
+
+	/**
+	 * @param 	first
+	 * 			the first antichain of the walk
+	 * @param 	last
+	 * 			the last antichain of the walk, with an encoding of at least that of first
+	 * @param 	empty
+	 * 			true iff the walk has no antichains
+	 */
+	IntervalCursor(SmallAntiChain first, SmallAntiChain last, boolean empty) {
+		top = last;
+		current = new SmallAntiChain(first);
+		finished = empty;
+	}
+
+	/**
+	 * Step to the next antichain of the interval, to the bottom at the first call
+	 *
+	 * @return	true iff there was a next antichain, false once all antichains have been visited
+	 */
+	public boolean advance() {
+		if (finished) return false;
+		if (!started) {
+			started = true;
+			return true;
+		}
+		if (current.equals(top)) {
+			finished = true;
+			return false;
+		}
+		current.nextInPlace();
+		return true;
+	}
+
+	/**
+	 * @return	the current antichain, changed by the next call of advance()
+	 * @throws	NoSuchElementException
+	 * 			if advance() has not returned true or has returned false
+	 */
+	public SmallAntiChain current() {
+		if (!started || finished) throw new NoSuchElementException();
+		return current;
+	}
+}
@@ -0,0 +1,90 @@
+package amfsmall;
+
+import java.util.Arrays;
+
+import auxiliary.BoundedCache;
+
+/**
+ * A cache for {@link AntiChainSolver#PatricksExponent(SmallAntiChain, SmallAntiChain)}
+ * shared between calls and threads.
+ *
+ * The key of a pair (r1, r2) is the representation of r1 followed by that of r2.
+ * thread safe
+ */
+public class PatricksCache {
+
+	private final BoundedCache<Key, Integer> cache;
+
+	/**
+	 * Create an empty cache
+	 *
+	 * @param 	capacity
+	 * 			the maximal number of pairs kept
+	 */
+	public PatricksCache(int capacity) {
+		cache = new BoundedCache<Key, Integer>(capacity);
+	}
+
+	/**
+	 * @param 	r1
+	 * @param 	r2
+	 * @return	AntiChainSolver.PatricksExponent(r1, r2), from the cache if possible
+	 */
+	public int exponent(SmallAntiChain r1, SmallAntiChain r2) {
+		Key key = new Key(r1, r2);
+		Integer res = cache.get(key);
+		if (res == null) {
+			res = AntiChainSolver.PatricksExponent(r1, r2);
+			cache.put(key, res);
+		}
+		return res;
+	}
+
+	/**
+	 * @return	the number of exponents found in the cache
+	 */
+	public long hits() {
+		return cache.hits();
+	}
+
+	/**
+	 * @return	the number of exponents that had to be computed
+	 */
+	public long misses() {
+		return cache.misses();
+	}
+
+	@Override
+	public String toString() {
+		return cache.toString();
+	}
+
+	/*
+	 * the words of r1 followed by the words of r2
+	 */
+	private static final class Key {
+
+		private final long[] words;
+		private final int hash;
+
+		Key(SmallAntiChain r1, SmallAntiChain r2) {
+			int len = Math.max(1, Math.max(r1.wordsInUse(), r2.wordsInUse()));
+			words = new long[2 * len];
+			for (int w = 0; w < len; w++) {
+				words[w] = r1.getWord(w);
+				words[len + w] = r2.getWord(w);
+			}
+			hash = Arrays.hashCode(words);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && Arrays.equals(words, ((Key) o).words);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package amfsmall;
+
+import java.util.Arrays;
+
+/**
+ * The graphs of {@link AntiChainSolver#PatricksExponent(SmallAntiChain, SmallAntiChain)} for one r2
+ * and many r1.
+ *
+ * The sets of r2 and the intersections of all pairs of them are computed once. The pairs are
+ * grouped by their intersection, so for a given r1 every distinct intersection is tested only once
+ * against the down closure of r1, and the pairs of an intersection that is not below r1 are the edges.
+ * A pair containing a set of r1 always has an intersection below r1, so the graph on the sets of r2
+ * has the same components as the graph on the sets of r2.minus(r1) plus one component for each set
+ * of r2 in r1.
+ * The arrays are kept when the graph is rebuilt for another r2 with {@link #setFunction(SmallAntiChain)},
+ * so one graph per thread suffices.
+ * not thread safe
+ */
+public class PatricksGraph {
+
+	private SmallAntiChain r2;
+	private int len;
+	private long[] words = new long[1];
+	private long[] down = new long[1];
+	private int m;
+
+	/*
+	 * intersections[x] is an intersection of two sets of r2 for x < distinct, the pairs with this
+	 * intersection are (first[k], second[k]) for k = start[x],...,start[x + 1] - 1,
+	 * the sets being numbered 0,...,m - 1
+	 */
+	private int distinct;
+	private int[] intersections = new int[0];
+	private int[] start = new int[1];
+	private int[] first = new int[0];
+	private int[] second = new int[0];
+
+	// scratch
+	private int[] nodes = new int[0];
+	private long[] packed = new long[0];
+	private long[] r1 = new long[1];
+	private long[] down1 = new long[1];
+	private int[] parent = new int[0];
+
+	/**
+	 * An empty graph, to be set with {@link #setFunction(SmallAntiChain)}
+	 */
+	public PatricksGraph() {
+	}
+
+	/**
+	 * Preprocess the graph for r2
+	 *
+	 * @param 	r2
+	 * 			the antichain for which the exponents will be computed
+	 */
+	public PatricksGraph(SmallAntiChain r2) {
+		setFunction(r2);
+	}
+
+	/**
+	 * Preprocess the graph for another r2, reusing the arrays of this graph
+	 *
+	 * @param 	r2
+	 * 			the antichain for which the exponents will be computed
+	 */
+	public void setFunction(SmallAntiChain r2) {
+		this.r2 = r2;
+		int l = 1;
+		while (l < r2.wordsInUse()) l <<= 1;
+		len = l;
+		if (words.length < len) {
+			words = new long[len];
+			down = new long[len];
+			r1 = new long[len];
+			down1 = new long[len];
+		}
+		for (int w = 0; w < len; w++)
+			words[w] = r2.getWord(w);
+		SmallAntiChain.downClosure(words, len, down);
+
+		int count = 0;
+		for (int w = 0; w < len; w++)
+			count += Long.bitCount(words[w]);
+		m = count;
+		if (nodes.length < m) {
+			nodes = new int[m];
+			parent = new int[m];
+		}
+		count = 0;
+		for (int w = 0; w < len; w++)
+			for (long bits = words[w]; bits != 0; bits &= bits - 1)
+				nodes[count++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+
+		// sort the pairs on their intersection, packed as intersection * m^2 + i * m + j
+		int pairs = m * (m - 1) / 2;
+		if (packed.length < pairs) {
+			packed = new long[pairs];
+			first = new int[pairs];
+			second = new int[pairs];
+			intersections = new int[pairs];
+			start = new int[pairs + 1];
+		}
+		int p = 0;
+		for (int i = 1; i < m; i++)
+			for (int j = 0; j < i; j++)
+				packed[p++] = ((long) (nodes[i] & nodes[j]) * m + i) * m + j;
+		Arrays.sort(packed, 0, pairs);
+
+		distinct = 0;
+		for (p = 0; p < pairs; p++)
+			if (p == 0 || packed[p] / m / m != packed[p - 1] / m / m) distinct++;
+		int x = -1;
+		for (p = 0; p < pairs; p++) {
+			int intersection = (int) (packed[p] / m / m);
+			if (x < 0 || intersection != intersections[x]) {
+				intersections[++x] = intersection;
+				start[x] = p;
+			}
+			first[p] = (int) (packed[p] / m % m);
+			second[p] = (int) (packed[p] % m);
+		}
+		start[distinct] = pairs;
+	}
+
+	/**
+	 * @return	the antichain r2 of this graph
+	 */
+	public SmallAntiChain getFunction() {
+		return r2;
+	}
+
+	/**
+	 * @param 	r1
+	 * 			an antichain
+	 * @return	AntiChainSolver.PatricksExponent(r1, getFunction())
+	 */
+	public int exponent(SmallAntiChain r1) {
+		int used = r1.wordsInUse();
+		if (used > len) return -1;
+		for (int w = 0; w < len; w++)
+			this.r1[w] = r1.getWord(w);
+		return exponent();
+	}
+
+	/**
+	 * Compute the exponents of representatives of a table
+	 *
+	 * @param 	table
+	 * 			the table containing the representatives, on at most as many elements as r2
+	 * @param 	positions
+	 * 			the positions of the representatives in table
+	 * @param 	count
+	 * 			the number of positions to use
+	 * @param 	result
+	 * 			at least count ints, result[k] will be the exponent for table.representative(positions[k])
+	 */
+	public void exponents(RepresentativeTable table, int[] positions, int count, int[] result) {
+		int width = table.width();
+		for (int k = 0; k < count; k++) {
+			int i = positions[k];
+			for (int w = 0; w < len; w++)
+				r1[w] = w < width ? table.code(i, w) : 0L;
+			result[k] = exponent();
+			for (int w = len; w < width; w++)
+				if (table.code(i, w) != 0) result[k] = -1;
+		}
+	}
+
+	/*
+	 * the exponent for the antichain in r1
+	 */
+	private int exponent() {
+		// trivial cases, no solutions unless r1 <= r2, one solution if r1 == r2
+		boolean equal = true, empty = true;
+		for (int w = 0; w < len; w++) {
+			if ((r1[w] & ~down[w]) != 0) return -1;
+			if (r1[w] != words[w]) equal = false;
+			if (r1[w] != 0) empty = false;
+		}
+		if (equal) return 0;
+		// treat the case of the empty function separately, (empty, r2), (r2,empty)
+		if (empty) return 1;
+
+		SmallAntiChain.downClosure(r1, len, down1);
+		int components = m;
+		for (int i = 0; i < m; i++)
+			parent[i] = i;
+		for (int x = 0; x < distinct; x++) {
+			int intersection = intersections[x];
+			if ((down1[intersection >>> 6] & (1L << intersection)) != 0) continue;
+			for (int p = start[x]; p < start[x + 1]; p++) {
+				int ri = find(first[p]), rj = find(second[p]);
+				if (ri != rj) {
+					parent[ri] = rj;
+					components--;
+				}
+			}
+		}
+		// the sets of r2 in r1 are isolated
+		for (int w = 0; w < len; w++)
+			components -= Long.bitCount(r1[w] & words[w]);
+		return components;
+	}
+
+	/*
+	 * the root of i, halving the path on the way
+	 */
+	private int find(int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+}
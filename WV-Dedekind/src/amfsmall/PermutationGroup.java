@@ -0,0 +1,380 @@
+package amfsmall;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * A group of permutations of {1,...,k}, k at most SmallBasicSet.MAXELEMENT.
+ *
+ * Every permutation is packed in one long, four bits per element: bits 4(e - 1),...,4(e - 1) + 3
+ * hold the image of e minus one. The packed permutations are kept sorted, so membership is a binary search,
+ * and a permutation is applied to an antichain set by set with a few shifts.
+ * Elements larger than k are fixed by all permutations.
+ * immutable
+ */
+public class PermutationGroup {
+
+	private static final int BITS = 4;
+	private static final long MASK = (1L << BITS) - 1;
+
+	private final int k;
+	private final long[] perms;
+
+	private PermutationGroup(int k, long[] perms) {
+		this.k = k;
+		Arrays.sort(perms);
+		this.perms = perms;
+	}
+
+	/**
+	 * @param 	k
+	 * 			the number of elements
+	 * @return	the group containing only the identity on {1,...,k}
+	 */
+	public static PermutationGroup trivial(int k) {
+		return new PermutationGroup(k, new long[]{identity(k)});
+	}
+
+	/**
+	 * @param 	k
+	 * 			the number of elements
+	 * @return	the group of all permutations of {1,...,k}
+	 */
+	public static PermutationGroup symmetric(int k) {
+		return automorphisms(new int[0], 0, k);
+	}
+
+	/**
+	 * The automorphisms of an antichain
+	 *
+	 * @param 	ac
+	 * 			an antichain on {1,...,k}
+	 * @param 	k
+	 * 			the number of elements
+	 * @return	the permutations of {1,...,k} that map ac onto itself
+	 */
+	public static PermutationGroup automorphisms(SmallAntiChain ac, int k) {
+		int[] sets = new int[ac.size()];
+		int m = 0;
+		for (SmallBasicSet s : ac)
+			sets[m++] = (int) s.toLong();
+		return automorphisms(sets, m, k);
+	}
+
+	/**
+	 * The automorphisms of an antichain that fix the elements outside its span.
+	 * The span is renumbered to {1,...,k} first, as for the standard form,
+	 * so only the permutations of the span are listed.
+	 *
+	 * @param 	ac
+	 * 			an antichain
+	 * @return	the permutations of {1,...,m}, m the largest element of the span of ac,
+	 * 			that map ac onto itself and fix the elements outside the span
+	 */
+	public static PermutationGroup spanAutomorphisms(SmallAntiChain ac) {
+		SmallBasicSet span = ac.sp();
+		int m = span.maximum();
+		int k = (int) span.size();
+		// element[i] is element i + 1 of the span, minus one
+		int[] element = new int[k];
+		long bits = span.toLong();
+		for (int i = 0; i < k; i++, bits &= bits - 1)
+			element[i] = Long.numberOfTrailingZeros(bits);
+		int[] sets = new int[ac.size()];
+		int n = 0;
+		for (SmallBasicSet s : ac) {
+			long set = s.toLong();
+			for (int i = 0; i < k; i++)
+				if ((set & 1L << element[i]) != 0) sets[n] |= 1 << i;
+			n++;
+		}
+		List<int[]> images = CanonicalForm.automorphisms(sets, n, k);
+		long[] perms = new long[images.size()];
+		for (int p = 0; p < perms.length; p++) {
+			long perm = identity(m);
+			int[] image = images.get(p);
+			for (int i = 0; i < k; i++)
+				perm = (perm & ~(MASK << (BITS * element[i]))) | (long) element[image[i]] << (BITS * element[i]);
+			perms[p] = perm;
+		}
+		return new PermutationGroup(m, perms);
+	}
+
+	/**
+	 * The automorphisms of a family of sets
+	 *
+	 * @param 	sets
+	 * 			the bit sequences of the sets of the family, subsets of {1,...,k}
+	 * @param 	m
+	 * 			the number of sets
+	 * @param 	k
+	 * 			the number of elements
+	 * @return	the permutations of {1,...,k} that map the family onto itself
+	 */
+	static PermutationGroup automorphisms(int[] sets, int m, int k) {
+		List<int[]> images = CanonicalForm.automorphisms(sets, m, k);
+		long[] perms = new long[images.size()];
+		for (int p = 0; p < perms.length; p++)
+			perms[p] = pack(images.get(p));
+		return new PermutationGroup(k, perms);
+	}
+
+	/**
+	 * Derive the automorphisms of t.join({{k+1}}) from the automorphisms of t.
+	 * A permutation of {1,...,k+1} that fixes k+1 is an automorphism of t.join({{k+1}}) iff it is one of t,
+	 * and k+1 can only be exchanged with an element e for which {e} is a set of t.
+	 * The transposition of such e and k+1 is an automorphism, so the group is this group
+	 * together with its cosets under these transpositions.
+	 *
+	 * @param 	t
+	 * 			an antichain on {1,...,k} of which this is the group of automorphisms
+	 * @return	the group of automorphisms of t.join({{k+1}}) on {1,...,k+1}
+	 */
+	public PermutationGroup joinSingleton(SmallAntiChain t) {
+		if (k + 1 > SmallBasicSet.MAXELEMENT)
+			throw new IllegalArgumentException("Cannot extend a group on " + k + " elements");
+		long fixed = (long) k << (BITS * k);
+		int cosets = 1;
+		for (int e = 1; e <= k; e++)
+			if (t.contains(SmallBasicSet.emptySet().add(e))) cosets++;
+		long[] res = new long[cosets * perms.length];
+		int r = 0;
+		for (long p : perms)
+			res[r++] = p | fixed;
+		for (int e = 1; e <= k; e++)
+			if (t.contains(SmallBasicSet.emptySet().add(e)))
+				for (long p : perms)
+					res[r++] = transpose(p | fixed, k + 1, e, k + 1);
+		return new PermutationGroup(k + 1, res);
+	}
+
+	/**
+	 * @return	the number of elements permuted
+	 */
+	public int getK() {
+		return k;
+	}
+
+	/**
+	 * @return	the number of permutations in this group
+	 */
+	public int size() {
+		return perms.length;
+	}
+
+	/**
+	 * @param 	p
+	 * 			a permutation of {1,...,k} in the format of {@link SmallAntiChain#symmetryGroup()}:
+	 * 			element e is mapped to p[e] + 1
+	 * @return	true iff p is in this group
+	 */
+	public boolean contains(int[] p) {
+		long packed = 0L;
+		for (int e = 1; e <= k; e++)
+			packed |= (long) p[e] << (BITS * (e - 1));
+		return Arrays.binarySearch(perms, packed) >= 0;
+	}
+
+	/**
+	 * @param 	i
+	 * 			the number of a permutation, 0 <= i < size()
+	 * @param 	e
+	 * 			an element
+	 * @return	the image of e under permutation i
+	 */
+	public int image(int i, int e) {
+		return e > k ? e : (int) ((perms[i] >>> (BITS * (e - 1))) & MASK) + 1;
+	}
+
+	/**
+	 * @param 	i
+	 * 			the number of a permutation, 0 <= i < size()
+	 * @param 	ac
+	 * 			an antichain
+	 * @return	the image of ac under permutation i
+	 */
+	public SmallAntiChain image(int i, SmallAntiChain ac) {
+		int len = Math.max(SmallAntiChain.wordsFor(k), ac.wordsInUse());
+		long[] words = new long[len];
+		for (SmallBasicSet s : ac) {
+			int j = map(perms[i], (int) s.toLong());
+			words[j >>> 6] |= 1L << j;
+		}
+		return SmallAntiChain.fromWords(words, 0, len);
+	}
+
+	/**
+	 * @param 	i
+	 * 			the number of a permutation, 0 <= i < size()
+	 * @param 	s
+	 * 			a set
+	 * @return	the image of s under permutation i
+	 */
+	public SmallBasicSet image(int i, SmallBasicSet s) {
+		return new SmallBasicSet(map(perms[i], (int) s.toLong()));
+	}
+
+	/**
+	 * @param 	ac
+	 * 			an antichain
+	 * @return	the permutations of this group that map ac onto itself
+	 */
+	public PermutationGroup stabilizer(SmallAntiChain ac) {
+		long[] res = new long[perms.length];
+		int r = 0;
+		for (int p = 0; p < perms.length; p++)
+			if (image(p, ac).equals(ac)) res[r++] = perms[p];
+		return new PermutationGroup(k, Arrays.copyOf(res, r));
+	}
+
+	/**
+	 * @param 	s
+	 * 			a set
+	 * @return	the permutations of this group that map s onto itself
+	 */
+	public PermutationGroup stabilizer(SmallBasicSet s) {
+		int set = (int) s.toLong();
+		long[] res = new long[perms.length];
+		int r = 0;
+		for (long p : perms)
+			if (map(p, set) == set) res[r++] = p;
+		return new PermutationGroup(k, Arrays.copyOf(res, r));
+	}
+
+	/**
+	 * @param 	i
+	 * 			the number of a permutation, 0 <= i < size()
+	 * @param 	s
+	 * 			the bit sequence of a set
+	 * @return	the bit sequence of the image of s under permutation i
+	 */
+	int imageOfSet(int i, int s) {
+		return map(perms[i], s);
+	}
+
+	/**
+	 * The smallest image of an antichain under this group, as {@link SmallAntiChain#standard(Set)}
+	 * with the permutations of this group
+	 *
+	 * @param 	ac
+	 * 			an antichain
+	 * @return	the image of ac with the smallest encoding, ac itself if no image is smaller
+	 */
+	public SmallAntiChain minimumImage(SmallAntiChain ac) {
+		int len = Math.max(SmallAntiChain.wordsFor(k), ac.wordsInUse());
+		long[] best = new long[len];
+		for (int w = 0; w < len; w++)
+			best[w] = ac.getWord(w);
+		long[] candidate = new long[len];
+		int bestPerm = -1;
+		for (int p = 0; p < perms.length; p++) {
+			Arrays.fill(candidate, 0L);
+			for (SmallBasicSet s : ac) {
+				int i = map(perms[p], (int) s.toLong());
+				candidate[i >>> 6] |= 1L << i;
+			}
+			if (compare(candidate, best) < 0) {
+				System.arraycopy(candidate, 0, best, 0, len);
+				bestPerm = p;
+			}
+		}
+		if (bestPerm < 0)
+			return ac;
+		int[] p = new int[(int) SmallBasicSet.MAXELEMENT + 1];
+		for (int e = 1; e < p.length; e++)
+			p[e] = image(bestPerm, e) - 1;
+		return ac.map(p);
+	}
+
+	/**
+	 * @param 	ac
+	 * 			an antichain
+	 * @return	the distinct images of ac under this group
+	 */
+	public SortedSet<SmallAntiChain> orbit(SmallAntiChain ac) {
+		SortedSet<SmallAntiChain> res = new TreeSet<SmallAntiChain>();
+		for (int p = 0; p < perms.length; p++)
+			res.add(ac.map(get(p)));
+		return res;
+	}
+
+	/**
+	 * @param 	i
+	 * 			the number of a permutation, 0 <= i < size()
+	 * @return	permutation i in the format of {@link SmallAntiChain#symmetryGroup()}:
+	 * 			an array p of length k + 1 with element e mapped to p[e] + 1
+	 */
+	public int[] get(int i) {
+		int[] res = new int[k + 1];
+		for (int e = 1; e <= k; e++)
+			res[e] = image(i, e) - 1;
+		return res;
+	}
+
+	/**
+	 * @return	the permutations of this group in the format of {@link SmallAntiChain#symmetryGroup()}
+	 */
+	public Set<int[]> toSet() {
+		Set<int[]> res = new HashSet<int[]>();
+		for (int p = 0; p < perms.length; p++)
+			res.add(get(p));
+		return res;
+	}
+
+	/*
+	 * the image of the set with bit sequence s under a packed permutation
+	 */
+	private int map(long perm, int s) {
+		int res = 0;
+		for (; s != 0; s &= s - 1) {
+			int b = Integer.numberOfTrailingZeros(s);
+			res |= 1 << (b < k ? (int) ((perm >>> (BITS * b)) & MASK) : b);
+		}
+		return res;
+	}
+
+	/*
+	 * compare sequences of words of the same length as unsigned numbers
+	 */
+	private static int compare(long[] a, long[] b) {
+		for (int w = a.length - 1; w >= 0; w--)
+			if (a[w] != b[w])
+				return (a[w] ^ Long.MIN_VALUE) < (b[w] ^ Long.MIN_VALUE) ? -1 : 1;
+		return 0;
+	}
+
+	private static long identity(int k) {
+		long res = 0L;
+		for (int e = 0; e < k; e++)
+			res |= (long) e << (BITS * e);
+		return res;
+	}
+
+	/*
+	 * pack an array with element e + 1 mapped to element image[e] + 1
+	 */
+	private static long pack(int[] image) {
+		long res = 0L;
+		for (int e = 0; e < image.length; e++)
+			res |= (long) image[e] << (BITS * e);
+		return res;
+	}
+
+	/*
+	 * the permutation p of {1,...,k} followed by the transposition of the elements a and b
+	 */
+	private static long transpose(long p, int k, int a, int b) {
+		long res = p;
+		for (int e = 0; e < k; e++) {
+			long image = (p >>> (BITS * e)) & MASK;
+			if (image == a - 1) image = b - 1;
+			else if (image == b - 1) image = a - 1;
+			res = (res & ~(MASK << (BITS * e))) | (image << (BITS * e));
+		}
+		return res;
+	}
+}
@@ -0,0 +1,121 @@
+package amfsmall;
+
+/**
+ * The images of all subsets of {1,...,k} under all permutations of {1,...,k}, for k at most MAXSIZE.
+ *
+ * Permutation p maps element e to element perm(p)[e - 1] + 1, the permutations are numbered
+ * in lexicographic order of perm(p), so permutation 0 is the identity.
+ * The image of the subset with bit sequence s under permutation p is image(p, s),
+ * so mapping an antichain becomes a lookup per set.
+ * immutable, the tables are created once per k and shared between threads
+ */
+final class PermutationTable {
+
+	/**
+	 * The largest k for which tables are kept, 7! * 2^7 images
+	 */
+	static final int MAXSIZE = 7;
+
+	private static final PermutationTable[] tables = new PermutationTable[MAXSIZE + 1];
+
+	private final int k;
+	private final int count;
+	private final byte[] images;
+	private final byte[] perms;
+
+	/**
+	 * @param 	k
+	 * 			the number of elements, at most MAXSIZE
+	 * @return	the table for the permutations of {1,...,k}
+	 */
+	static PermutationTable get(int k) {
+		if (k < 0 || k > MAXSIZE)
+			throw new IllegalArgumentException("No permutation table for " + k + " elements");
+		synchronized (tables) {
+			if (tables[k] == null)
+				tables[k] = new PermutationTable(k);
+			return tables[k];
+		}
+	}
+
+	private PermutationTable(int k) {
+		this.k = k;
+		int c = 1;
+		for (int i = 2; i <= k; i++)
+			c *= i;
+		count = c;
+		images = new byte[count << k];
+		perms = new byte[count * k];
+		int[] perm = new int[k];
+		for (int i = 0; i < k; i++)
+			perm[i] = i;
+		for (int p = 0; p < count; p++) {
+			for (int i = 0; i < k; i++)
+				perms[p * k + i] = (byte) perm[i];
+			int offset = p << k;
+			for (int s = 1; s < 1 << k; s++) {
+				// s without its lowest element, plus the image of that element
+				int low = Integer.numberOfTrailingZeros(s);
+				images[offset + s] = (byte) (images[offset + (s & (s - 1))] | (1 << perm[low]));
+			}
+			nextPermutation(perm);
+		}
+	}
+
+	/**
+	 * @return	the number of elements permuted
+	 */
+	int getK() {
+		return k;
+	}
+
+	/**
+	 * @return	the number of permutations, k!
+	 */
+	int size() {
+		return count;
+	}
+
+	/**
+	 * @param 	p
+	 * 			the number of a permutation
+	 * @param 	s
+	 * 			the bit sequence of a subset of {1,...,k}
+	 * @return	the bit sequence of the image of s under permutation p
+	 */
+	int image(int p, int s) {
+		return images[(p << k) + s];
+	}
+
+	/**
+	 * @param 	p
+	 * 			the number of a permutation
+	 * @param 	e
+	 * 			an element of {1,...,k}
+	 * @return	the image of e under permutation p
+	 */
+	int imageOf(int p, int e) {
+		return perms[p * k + e - 1] + 1;
+	}
+
+	/*
+	 * rearrange perm into the next permutation in lexicographic order, the first one after the last
+	 */
+	private static void nextPermutation(int[] perm) {
+		int i = perm.length - 2;
+		while (i >= 0 && perm[i] > perm[i + 1]) i--;
+		if (i >= 0) {
+			int j = perm.length - 1;
+			while (perm[j] < perm[i]) j--;
+			swap(perm, i, j);
+		}
+		for (int a = i + 1, b = perm.length - 1; a < b; a++, b--)
+			swap(perm, a, b);
+	}
+
+	private static void swap(int[] perm, int i, int j) {
+		int h = perm[i];
+		perm[i] = perm[j];
+		perm[j] = h;
+	}
+}
@@ -0,0 +1,242 @@
+package amfsmall;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * The representatives of the equivalence classes of antichains on {1,...,n}
+ * together with the number of antichains they represent and the size of the interval below them,
+ * as needed by the drivers computing a Dedekind number.
+ *
+ * The table is stored as parallel arrays indexed by the position of the representative
+ * in the order of SmallAntiChain.compareTo. The representations of the representatives are
+ * packed in one array of longs so that a scan for the representatives below a given antichain
+ * only touches primitive arrays.
+ * immutable after the left interval sizes are computed
+ */
+public class RepresentativeTable implements Serializable {
+
+	private static final long serialVersionUID = 3064527811098946126L;
+
+	private final int n;
+	private final int width;
+	private final long[] codes;
+	private final long[] multiplicities;
+	private final long[] leftIntervalSizes;
+	private final long[] weights;
+	private final SmallAntiChain[] representatives;
+
+	/**
+	 * Collect the representatives of the equivalence classes of antichains on {1,...,n}.
+	 *
+	 * @param 	n
+	 * 			the size of the universe
+	 * @param 	classes
+	 * 			classes[i] maps the encoding of the representatives with span {1,...,i}
+	 * 			to the size of their equivalence class, as in {@link AntiChainSolver#equivalenceClasses(int, ExecutorService...)}
+	 * @post	the left interval sizes are not yet known
+	 * @see		#computeLeftIntervalSizes(ExecutorService)
+	 */
+	public RepresentativeTable(int n, SortedMap<BigInteger, Long>[] classes) {
+		this.n = n;
+		width = SmallAntiChain.wordsFor(n);
+
+		// the order of the encodings is the order of SmallAntiChain.compareTo
+		SortedMap<BigInteger, Long> all = new TreeMap<BigInteger, Long>();
+		for (int i = 0; i < classes.length; i++) {
+			long coeff = SmallBasicSet.combinations(n, i);
+			for (BigInteger b : classes[i].keySet())
+				Storage.store(all, b, classes[i].get(b) * coeff);
+		}
+
+		int size = all.size();
+		codes = new long[size * width];
+		multiplicities = new long[size];
+		leftIntervalSizes = new long[size];
+		weights = new long[size];
+		representatives = new SmallAntiChain[size];
+		int i = 0;
+		for (BigInteger b : all.keySet()) {
+			SmallAntiChain r = SmallAntiChain.decode(b);
+			for (int w = 0; w < width; w++)
+				codes[i * width + w] = r.getWord(w);
+			multiplicities[i] = all.get(b);
+			representatives[i++] = r;
+		}
+	}
+
+	/********************************************************
+	 * Preprocessing										*
+	 ********************************************************/
+
+	/**
+	 * Compute the size of [{}, r] for every representative r
+	 */
+	public void computeLeftIntervalSizes() {
+		SmallAntiChain e = SmallAntiChain.emptyAntiChain();
+		for (int i = 0; i < size(); i++)
+			setLeftIntervalSize(i, new AntiChainInterval(e, representatives[i]).latticeSize());
+	}
+
+	/**
+	 * Compute the size of [{}, r] for every representative r, using the threads of a pool
+	 *
+	 * @param 	pool
+	 * 			the pool executing the computations
+	 * @throws 	InterruptedException if one of the threads got interrupted
+	 * @throws 	ExecutionException if something went wrong with the computation in a certain thread
+	 */
+	public void computeLeftIntervalSizes(ExecutorService pool) throws InterruptedException, ExecutionException {
+		final SmallAntiChain e = SmallAntiChain.emptyAntiChain();
+		ArrayList<Future<Long>> sizes = new ArrayList<Future<Long>>();
+		for (final SmallAntiChain f : representatives) {
+			sizes.add(pool.submit(new Callable<Long>() {
+
+				@Override
+				public Long call() throws Exception {
+					return new AntiChainInterval(e,f).latticeSize();
+				}
+
+			}));
+		}
+		for (int i = 0; i < size(); i++)
+			setLeftIntervalSize(i, sizes.get(i).get());
+	}
+
+	private void setLeftIntervalSize(int i, long size) {
+		BigInteger weight = BigInteger.valueOf(multiplicities[i]).multiply(BigInteger.valueOf(size));
+		if (weight.bitLength() >= Long.SIZE)
+			throw new ArithmeticException("Weight of " + representatives[i] + " does not fit in a long");
+		leftIntervalSizes[i] = size;
+		weights[i] = weight.longValue();
+	}
+
+	/********************************************************
+	 * Access												*
+	 ********************************************************/
+
+	/**
+	 * @return the size of the universe of the representatives
+	 */
+	public int getN() {
+		return n;
+	}
+
+	/**
+	 * @return the number of representatives
+	 */
+	public int size() {
+		return multiplicities.length;
+	}
+
+	/**
+	 * @return the representative at position i
+	 */
+	public SmallAntiChain representative(int i) {
+		return representatives[i];
+	}
+
+	/**
+	 * @return the representatives in the order of their positions
+	 */
+	public Iterator<SmallAntiChain> representatives() {
+		return Arrays.asList(representatives).iterator();
+	}
+
+	/**
+	 * @return the number of antichains represented by the representative at position i
+	 */
+	public long multiplicity(int i) {
+		return multiplicities[i];
+	}
+
+	/**
+	 * @return the size of the interval [{}, representative(i)]
+	 */
+	public long leftIntervalSize(int i) {
+		return leftIntervalSizes[i];
+	}
+
+	/**
+	 * @return multiplicity(i) * leftIntervalSize(i)
+	 */
+	public long weight(int i) {
+		return weights[i];
+	}
+
+	/**
+	 * Word w of the representation of representative(i)
+	 */
+	long code(int i, int w) {
+		return codes[i * width + w];
+	}
+
+	/**
+	 * @return the number of words in the representation of a representative
+	 */
+	int width() {
+		return width;
+	}
+
+	/**
+	 * The down closure of an antichain in the format expected by {@link #isBelow(int, long[])}
+	 *
+	 * @param 	function
+	 * 			an antichain on {1,...,getN()}
+	 * @return	the representation of all subsets of sets in function
+	 */
+	public long[] downClosure(SmallAntiChain function) {
+		long[] words = new long[width];
+		for (int w = 0; w < width; w++)
+			words[w] = function.getWord(w);
+		SmallAntiChain.downClosure(words, width, words);
+		return words;
+	}
+
+	/**
+	 * Check whether representative(i) le function
+	 *
+	 * @param 	i
+	 * 			the position of the representative
+	 * @param 	down
+	 * 			the down closure of function, as computed by {@link #downClosure(SmallAntiChain)}
+	 * @return	true iff every set in representative(i) is a subset of a set in function
+	 */
+	public boolean isBelow(int i, long[] down) {
+		int offset = i * width;
+		for (int w = 0; w < width; w++)
+			if ((codes[offset + w] & ~down[w]) != 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Check for all representatives whether they are below function
+	 *
+	 * @param 	down
+	 * 			the down closure of function, as computed by {@link #downClosure(SmallAntiChain)}
+	 * @param 	bitmap
+	 * 			at least (size() + 63) / 64 longs, bit i of the bit sequence is set iff representative(i) le function
+	 * @return	the number of representatives below function
+	 */
+	public int below(long[] down, long[] bitmap) {
+		return BatchLe.below(codes, width, 0, size(), down, bitmap);
+	}
+
+	@Override
+	public String toString() {
+		String[] entries = new String[size()];
+		for (int i = 0; i < size(); i++)
+			entries[i] = representatives[i] + "=" + multiplicities[i];
+		return Arrays.toString(entries);
+	}
+}
@@ -3,24 +3,28 @@ package amfsmall;
 import java.io.Serializable;
 import java.math.BigInteger;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
-import auxiliary.Pair;
-
 /**
- * More efficient representation for AntiChains (not really smaller, due to non-sparse BitSet).
+ * More efficient representation for AntiChains (not really smaller, due to non-sparse bit sequence).
+ * The antichain is a sequence of words in which bit i is set iff the set with representation i is in the antichain,
+ * so that the lattice operations can be computed with closures over whole words.
  */
 public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<SmallAntiChain>, LatticeElement, Serializable {
 
-	private static final long serialVersionUID = -530910801257060853L;
+	private static final long serialVersionUID = 8409313623522781327L;
 	
-	private BitSet theAntiChain = new BitSet();
+	private long[] theAntiChain = new long[1];
 	private SmallBasicSet universe = SmallBasicSet.universe();
 	
+	/*
+	 * spare sequences of words for the in-place operations, allocated when first needed
+	 */
+	private transient long[][] buffers;
+	
 	/********************************************************
 	 * Constructors											*
 	 ********************************************************/
@@ -30,14 +34,14 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 */
 	public SmallAntiChain(Collection<SmallBasicSet> C) {
 		for(SmallBasicSet s : C) 
-			theAntiChain.set((int) s.toLong());
+			setBit((int) s.toLong());
 	}
 	
 	/**
 	 * Create an antichain with another antichain.
 	 */
 	public SmallAntiChain(SmallAntiChain ac) {
-		theAntiChain = (BitSet) ac.theAntiChain.clone();
+		theAntiChain = ac.theAntiChain.clone();
 		this.setUniverse(ac.getUniverse());
 	}
 	
@@ -47,20 +51,38 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 * @see #toLongArray()
 	 */
 	public SmallAntiChain(long[] l) {
-//		theAntiChain = BitSet.valueOf(l);
-		if(l.length == 1) {
-			emptyAntiChain(new SmallBasicSet(l[0]));
-		} else {
-			theAntiChain = BitSet.valueOf(Arrays.copyOf(l, l.length - 1));
-			universe = new SmallBasicSet(l[l.length - 1]);
-		}	
+		if(l.length > 1)
+			theAntiChain = Arrays.copyOf(l, l.length - 1);
+		universe = new SmallBasicSet(l[l.length - 1]);
 	}
 	
 	/**
 	 * Create an empty antichain
 	 */
 	public SmallAntiChain() {
-		theAntiChain = new BitSet(1);
+		theAntiChain = new long[1];
+	}
+	
+	/**
+	 * Create an antichain from a sequence of words, without copying
+	 */
+	private SmallAntiChain(long[] words, SmallBasicSet u) {
+		theAntiChain = words;
+		universe = u;
+	}
+	
+	/**
+	 * Create an antichain with the default universe from a part of an array of words
+	 * 
+	 * @param 	words
+	 * 			the array containing the representation
+	 * @param 	offset
+	 * 			the index of the first word of the representation
+	 * @param 	length
+	 * 			the number of words in the representation
+	 */
+	static SmallAntiChain fromWords(long[] words, int offset, int length) {
+		return new SmallAntiChain(Arrays.copyOfRange(words, offset, offset + length), SmallBasicSet.universe());
 	}
 
 	/********************************************************
@@ -69,7 +91,7 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 
 	private static SmallAntiChain emptyAntiChain = new SmallAntiChain();
 	private static SmallAntiChain emptySetAntiChain = new SmallAntiChain();
-		static {emptySetAntiChain.theAntiChain.set(0);}
+		static {emptySetAntiChain.setBit(0);}
 	
 	public static SmallAntiChain emptyAntiChain() {
 		return new SmallAntiChain(emptyAntiChain);
@@ -83,20 +105,20 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 		if(l == 0)
 			return emptySetAntiChain();
 		SmallAntiChain result = new SmallAntiChain();
-		result.theAntiChain.set((int) (1L << (l-1)));
+		result.setBit((int) (1L << (l-1)));
 		return result;
 	}
 	
 	public static SmallAntiChain universeAntiChain(int n) {
 		SmallAntiChain result = new SmallAntiChain();
-		result.theAntiChain.set(((int) (1L << n) - 1));
+		result.setBit(((int) (1L << n) - 1));
 		result.setUniverse(SmallBasicSet.universe(n));
 		return result;
 	}
 	
 	public static SmallAntiChain oneSetAntiChain(SmallBasicSet x) {
 		SmallAntiChain result = new SmallAntiChain();
-		result.theAntiChain.set((int) x.toLong());
+		result.setBit((int) x.toLong());
 		return result;
 	}
 	
@@ -114,14 +136,9 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 */
 	public static SmallAntiChain decode(BigInteger b) {
 		SmallAntiChain result = new SmallAntiChain();
-		byte[] array = b.toByteArray();
-		byte temp;
-		for(int i = 1; i <= array.length / 2; i++) {
-			temp = array[i - 1];
-			array[i - 1] = array[array.length - i];
-			array[array.length - i] = temp;
-		}
-		result.theAntiChain = BitSet.valueOf(array);
+		result.theAntiChain = new long[Math.max(1, (b.bitLength() + 63) >>> 6)];
+		for(int i = 0; i < result.theAntiChain.length; i++)
+			result.theAntiChain[i] = b.shiftRight(i << 6).longValue();
 		return result;
 	}
 	
@@ -145,13 +162,12 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 * 			The set to be added
 	 */
 	public void addConditionally(SmallBasicSet x) {
-		SmallBasicSet a;
-		for(int i = theAntiChain.nextSetBit(0); i >= 0; i = theAntiChain.nextSetBit(i+1)) {
-			a = new SmallBasicSet(i);
-			if(a.hasAsSubset(x)) return;
-			if(x.hasAsSubset(a)) theAntiChain.set(i, false);
+		int s = (int) x.toLong();
+		for(int i = nextSetBit(0); i >= 0; i = nextSetBit(i+1)) {
+			if((i | s) == i) return;
+			if((i | s) == s) clearBit(i);
 		}
-		theAntiChain.set((int) x.toLong());
+		setBit(s);
 	}
 
 	/**
@@ -162,9 +178,7 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 * 			The antichain to be added
 	 */
 	public void addConditionallyAll(SmallAntiChain x) {
-		for(int i = x.theAntiChain.nextSetBit(0); i >= 0; i = x.theAntiChain.nextSetBit(i+1)) {
-			addConditionally(new SmallBasicSet(i));
-		}
+		theAntiChain = join(theAntiChain, x.theAntiChain);
 	}
 	
 	/**
@@ -173,11 +187,7 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 * @return a SmallBasicSet containing the union of all SmallBasicSets in this
 	 */
 	public SmallBasicSet sp() {
-		SmallBasicSet span = SmallBasicSet.emptySet();
-		for(int i = theAntiChain.nextSetBit(0); i >= 0; i = theAntiChain.nextSetBit(i+1)) {
-			span = span.union(new SmallBasicSet(i));
-		}
-		return span;
+		return new SmallBasicSet(span(theAntiChain));
 	}
 	
 	/**
@@ -188,11 +198,13 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 * @return 	the SmallAntiChain containing only intersections of this with b
 	 */
 	public SmallAntiChain project(SmallBasicSet b) {
-		SmallAntiChain res = SmallAntiChain.emptyAntiChain(this.getUniverse());
-		for (int i = theAntiChain.nextSetBit(0); i >= 0; i = theAntiChain.nextSetBit(i+1)) {
-			res.addConditionally(new SmallBasicSet(i).intersection(b));
-		}
-		return res;
+		int len = theAntiChain.length;
+		long[] down = downClosure(theAntiChain);
+		long[] subSets = new long[len];
+		subSets(b.toLong(), subSets, len);
+		for (int w = 0; w < len; w++) down[w] &= subSets[w];
+		maximalOfDown(down, len, subSets);
+		return new SmallAntiChain(subSets, getUniverse());
 	}
 	
 	/**
@@ -203,8 +215,10 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 * @return 	true iff x is contained in at least one set in this
 	 */
 	public boolean ge(SmallBasicSet x) {
-		for(int i = theAntiChain.nextSetBit(0); i >= 0; i = theAntiChain.nextSetBit(i+1)) {
-			if(new SmallBasicSet(i).hasAsSubset(x))
+		int s = (int) x.toLong();
+		// supersets of x have a representation of at least x
+		for(int i = nextSetBit(s); i >= 0; i = nextSetBit(i+1)) {
+			if((i | s) == i)
 				return true;
 		}
 		return false;
@@ -242,37 +256,97 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 */
 	public SmallAntiChain minus(SmallAntiChain f) {
 		SmallAntiChain res = new SmallAntiChain(this);
-		res.theAntiChain.andNot(f.theAntiChain);
+		for (int w = Math.min(theAntiChain.length, f.theAntiChain.length) - 1; w >= 0; w--)
+			res.theAntiChain[w] &= ~f.theAntiChain[w];
 		return res;
 	}
 	
 	/**
 	 * Find the minimal representation of this SmallAntiChain
-	 * under permutation of the elements
+	 * under permutation of the elements,
+	 * the forms are kept in the {@link StandardCache} shared by all callers if it is enabled
 	 * 
 	 * @return the representant with with the smallest encoding
 	 */
 	public SmallAntiChain standard() {
+		if (!StandardCache.isEnabled())
+			return computeStandard();
+		long[] words = StandardCache.get(this);
+		if (words == null) {
+			SmallAntiChain res = computeStandard();
+			StandardCache.put(this, res);
+			return res;
+		}
+		// as when it is computed, this is kept unless the standard form is different
+		boolean same = words.length >= wordsInUse();
+		for (int w = 0; w < words.length && same; w++)
+			same = words[w] == getWord(w);
+		return same ? this : new SmallAntiChain(words.clone(), getUniverse());
+	}
+	
+	/*
+	 * standard() without the cache
+	 */
+	private SmallAntiChain computeStandard() {
 		SmallBasicSet span = sp();
-		int map[] = new int[(int) span.size()];
-		int inverseMap[] = new int[span.maximum() + 1];
-		int pos = 0;
-		for (int i:span) {
-			map[pos] = i;
-			inverseMap[i] = pos++;
+		int k = (int) span.size();
+		int[] sets = renumberedSets(span);
+		if (k <= PermutationTable.MAXSIZE)
+			return standard(PermutationTable.get(k), sets);
+		int[] image = CanonicalForm.minimalImage(sets, sets.length, k);
+		long[] words = new long[wordsFor(k)];
+		for (int s : image)
+			words[s >>> 6] |= 1L << s;
+		SmallAntiChain best = new SmallAntiChain(words, getUniverse());
+		// this is kept unless the image is strictly smaller
+		return best.compareTo(this) < 0 ? best : this;
+	}
+	
+	/*
+	 * the sets of this with the elements of span renumbered to 1,...,|span| in order
+	 */
+	private int[] renumberedSets(SmallBasicSet span) {
+		long spanBits = span.toLong();
+		int[] sets = new int[size()];
+		int m = 0;
+		for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+			int s = 0, pos = 0;
+			for (long bits = spanBits; bits != 0; bits &= bits - 1, pos++)
+				if ((i & Long.lowestOneBit(bits)) != 0) s |= 1 << pos;
+			sets[m++] = s;
 		}
-		Iterator<Pair<int[], int[]>> permutations = MappingPermutation.getIterator(map,inverseMap,map.length);
-		SmallAntiChain best = this;
-		BigInteger bestCode = this.encode();
-		while (permutations.hasNext()) {
-			SmallAntiChain kand = this.map(permutations.next().snd);
-			BigInteger code = kand.encode();
-			if (code.compareTo(bestCode) < 0) {
-				best = kand;
-				bestCode = code;
+		return sets;
+	}
+	
+	/*
+	 * standard() for a span of at most PermutationTable.MAXSIZE elements:
+	 * all permutations of {1,...,k} are applied to the renumbered sets
+	 * with a table lookup per set, the candidates are compared as two words
+	 */
+	private SmallAntiChain standard(PermutationTable table, int[] sets) {
+		int m = sets.length;
+		long best0 = -1L, best1 = -1L;
+		for (int p = 0; p < table.size(); p++) {
+			long w0 = 0L, w1 = 0L;
+			for (int k = 0; k < m; k++) {
+				int image = table.image(p, sets[k]);
+				if (image < 64) w0 |= 1L << image;
+				else w1 |= 1L << image;
+			}
+			if (lessUnsigned(w1, best1) || (w1 == best1 && lessUnsigned(w0, best0))) {
+				best0 = w0;
+				best1 = w1;
 			}
 		}
-		return best;	
+		// as in the general case, this is kept unless a candidate is strictly smaller
+		long this0 = getWord(0), this1 = getWord(1);
+		if (wordsInUse() <= 2 && !lessUnsigned(best1, this1) && (best1 != this1 || !lessUnsigned(best0, this0)))
+			return this;
+		return new SmallAntiChain(best1 == 0 ? new long[]{best0} : new long[]{best0, best1}, getUniverse());
+	}
+	
+	private static boolean lessUnsigned(long a, long b) {
+		return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
 	}
 
 	/**
@@ -283,14 +357,10 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 */
 	public SmallAntiChain standard(Set<int[]> permutations) {
 		SmallAntiChain best = this;
-		BigInteger bestCode = this.encode();
 		for (int[] p : permutations) {
 			SmallAntiChain kand = this.map(p);
-			BigInteger code = kand.encode();
-			if (code.compareTo(bestCode) < 0) {
+			if (kand.compareTo(best) < 0)
 				best = kand;
-				bestCode = code;
-			}
 		}
 		return best;	
 	}
@@ -304,26 +374,46 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	public Set<int[]> symmetryGroup() {
 		Set<int[]> res = new HashSet<int[]>();
 		SmallBasicSet span = sp();
-		int map[] = new int[(int) span.size()];
-		int inverseMap[] = new int[span.maximum() + 1];
-		int pos = 0;
-		for (int i:span) {
-			map[pos] = i;
-			inverseMap[i] = pos++;
+		int k = (int) span.size();
+		if (k > 0 && span.toLong() == (1L << k) - 1) {
+			// the span is {1,...,k}, search the automorphisms directly
+			return PermutationGroup.automorphisms(this, k).toSet();
 		}
-		Iterator<Pair<int[], int[]>> permutations = MappingPermutation.getIterator(map,inverseMap,map.length);
-		BigInteger theCode = this.encode();
-		while (permutations.hasNext()) {
-			int[] p = permutations.next().snd;
-			SmallAntiChain kand = this.map(p);
-			BigInteger code = kand.encode();
-			if (code.compareTo(theCode) == 0) {
-				res.add(Arrays.copyOf(p, p.length));
-			}
+		// walk through the permutations of the span, keeping the image up to date one transposition at a time
+		int[] elements = new int[k];
+		int pos = 0;
+		for (int i : span)
+			elements[pos++] = i;
+		int len = wordsFor(span.maximum());
+		long[] image = new long[len];
+		for (int w = 0; w < len; w++)
+			image[w] = getWord(w);
+		TranspositionWalk walk = new TranspositionWalk(elements);
+		res.add(permutation(walk, span.maximum()));
+		while (walk.next()) {
+			swap(image, len, walk.first(), walk.second());
+			boolean equal = true;
+			for (int w = 0; w < len && equal; w++)
+				equal = image[w] == getWord(w);
+			if (equal)
+				res.add(permutation(walk, span.maximum()));
 		}
 		return res;		
 	}
 	
+	/*
+	 * the current permutation of a walk as an array p of length m + 1 with element e mapped to p[e] + 1,
+	 * the elements that are not walked over are fixed
+	 */
+	private static int[] permutation(TranspositionWalk walk, int m) {
+		int[] p = new int[m + 1];
+		for (int e = 1; e <= m; e++)
+			p[e] = e - 1;
+		for (int i = 0; i < walk.length(); i++)
+			p[walk.element(i)] = walk.image(i) - 1;
+		return p;
+	}
+	
 	/**
 	 * ???
 	 *
@@ -334,8 +424,13 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	//TODO: complete comments
 	public SmallAntiChain map(int[] inverse) {
 		SmallAntiChain res = SmallAntiChain.emptyAntiChain(getUniverse());
-		for(int i = theAntiChain.nextSetBit(0); i >= 0; i = theAntiChain.nextSetBit(i+1)) {
-			res.add(new SmallBasicSet(i).map(inverse));
+		long u = getUniverse().toLong();
+		for(int i = nextSetBit(0); i >= 0; i = nextSetBit(i+1)) {
+			long image = 0L;
+			for (int s = i; s != 0; s &= s - 1)
+				image |= 1L << inverse[Integer.numberOfTrailingZeros(s) + 1];
+			if ((image & ~u) == 0)
+				res.setBit((int) image);
 		}
 		return res;
 	}
@@ -346,10 +441,12 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 * @return the binary encoding of this antichain
 	 */
 	public BigInteger encode() {
-		BigInteger result = BigInteger.ZERO;
-		for(int i = theAntiChain.nextSetBit(0); i >= 0; i = theAntiChain.nextSetBit(i+1))
-			result = result.setBit(i);
-		return result;
+		int len = wordsInUse();
+		byte[] bytes = new byte[(len << 3) + 1];
+		for(int w = 0; w < len; w++)
+			for(int k = 0; k < 8; k++)
+				bytes[bytes.length - 1 - (w << 3) - k] = (byte) (theAntiChain[w] >>> (k << 3));
+		return new BigInteger(bytes);
 	}
 	
 	/**
@@ -394,12 +491,13 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 		}
 		SmallAntiChain res = SmallAntiChain.emptyAntiChain(getUniverse());
 		res.add(sp().minus(alfa.sp()));
-		for (int i = alfa.theAntiChain.nextSetBit(0); i >= 0; i = alfa.theAntiChain.nextSetBit(i+1)) {
-			SmallAntiChain current = SmallAntiChain.emptyAntiChain(getUniverse());
+		SmallAntiChain current = SmallAntiChain.emptyAntiChain(getUniverse());
+		for (int i = alfa.nextSetBit(0); i >= 0; i = alfa.nextSetBit(i+1)) {
+			current.clear();
 			current.add(new SmallBasicSet(i));
-			res = (SmallAntiChain) res.times(current.meet(tau));
+			res.timesInPlace(current.meetInPlace(tau));
 		}
-		return (SmallAntiChain) res.meet(this);
+		return res.meetInPlace(this);
 	}
 	
 	/**
@@ -428,36 +526,29 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 		if(this.isEmpty())
 			return SmallAntiChain.emptySetAntiChain();
 		
-		SmallAntiChain res = getMonotonic();
-		int c = res.theAntiChain.nextClearBit(0);
-		
-		res.theAntiChain = (BitSet) theAntiChain.clone();
-		res.theAntiChain.set(c);
-		res.theAntiChain.set(0, c, false);
-		
-		return res;	
+		return new SmallAntiChain(this).nextInPlace();
 	}
 	
 	/**
-	 * Return the monotonic function related to this antichain.
+	 * Replace this antichain by getNext(), in place.
+	 * The smallest set c that is not in the down closure of this is added and the sets smaller than c are removed,
+	 * the down closure is computed in a spare buffer, so nothing is allocated once the buffers are large enough.
+	 * As for getNext(), the empty antichain becomes {{}} with the default universe.
 	 * 
-	 * @return	a SmallAntiChain which is actually a monotonic function.
+	 * @return	this
 	 */
-	private SmallAntiChain getMonotonic() {
-		if(this.isEmpty())
-			return SmallAntiChain.emptyAntiChain();
-		
-		SmallAntiChain res = new SmallAntiChain(this);
-
-		int i = theAntiChain.previousSetBit(theAntiChain.length());
-		while(i >= 0) {
-			if(i < res.theAntiChain.nextClearBit(0))
-				break;
-			res.theAntiChain.or(new SmallBasicSet(i).immediateSubSets().theAntiChain);
-			i = res.theAntiChain.previousSetBit(i - 1);
-		}
-		
-		return res;
+	public SmallAntiChain nextInPlace() {
+		int len = wordsInUse();
+		if (len == 0) universe = SmallBasicSet.universe();
+		long[] down = buffer(0, len);
+		downClosure(theAntiChain, len, down);
+		int w = 0;
+		while (w < len && down[w] == -1L) w++;
+		int c = w < len ? (w << 6) + Long.numberOfTrailingZeros(~down[w]) : w << 6;
+		setBit(c);
+		Arrays.fill(theAntiChain, 0, c >>> 6, 0L);
+		theAntiChain[c >>> 6] &= -1L << c;
+		return this;
 	}
 	
 	/**
@@ -467,17 +558,488 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 * @see #SmallAntiChain(long[])
 	 */
 	public long[] toLongArray() {
-//		return theAntiChain.toLongArray();
-		if(this.isEmpty()) {
-			return new long[]{universe.toLong()};
-		} else {
-			long[] temp = theAntiChain.toLongArray();
-			long[] result = Arrays.copyOf(temp, temp.length + 1);
-			result[temp.length] = universe.toLong();
-			return result;
+		int len = wordsInUse();
+		long[] result = Arrays.copyOf(theAntiChain, len + 1);
+		result[len] = universe.toLong();
+		return result;
+	}
+	
+	/********************************************************
+	 * In-place operations									*
+	 ********************************************************/
+	
+	/*
+	 * The operations below store their result in an existing antichain, 
+	 * which may be one of the operands. The words of the result are computed 
+	 * in the spare buffers of the target and then swapped with its representation, 
+	 * so a target that is reused does not allocate anything once its buffers are large enough.
+	 * The immutable operations above are equivalent to these on a fresh target.
+	 */
+	
+	/**
+	 * Store a + b in target
+	 * 
+	 * @param 	target
+	 * 			the antichain to store the result in, may be a or b
+	 * @param 	a
+	 * 			the first operand
+	 * @param 	b
+	 * 			the second operand
+	 * @return	target, equal to a.join(b) with the universe of a
+	 * @see		#join(LatticeElement)
+	 */
+	public static SmallAntiChain joinInto(SmallAntiChain target, SmallAntiChain a, SmallAntiChain b) {
+		int len = Math.max(a.theAntiChain.length, b.theAntiChain.length);
+		long[] union = target.buffer(0, len);
+		for (int w = 0; w < len; w++)
+			union[w] = word(a.theAntiChain, w) | word(b.theAntiChain, w);
+		maximal(union, len, union, target.buffer(1, len));
+		return target.install(0, len, a.getUniverse());
+	}
+	
+	/**
+	 * Store a.b in target
+	 * 
+	 * @param 	target
+	 * 			the antichain to store the result in, may be a or b
+	 * @param 	a
+	 * 			the first operand
+	 * @param 	b
+	 * 			the second operand
+	 * @return	target, equal to a.meet(b) with the universe of a
+	 * @see		#meet(LatticeElement)
+	 */
+	public static SmallAntiChain meetInto(SmallAntiChain target, SmallAntiChain a, SmallAntiChain b) {
+		int aLen = a.theAntiChain.length, bLen = b.theAntiChain.length;
+		int len = Math.min(aLen, bLen);
+		long[] down = target.buffer(0, aLen);
+		long[] bDown = target.buffer(1, bLen);
+		downClosure(a.theAntiChain, aLen, down);
+		downClosure(b.theAntiChain, bLen, bDown);
+		for (int w = 0; w < len; w++)
+			down[w] &= bDown[w];
+		maximalOfDown(down, len, bDown);
+		return target.install(1, len, a.getUniverse());
+	}
+	
+	/**
+	 * Store a x b in target
+	 * 
+	 * @param 	target
+	 * 			the antichain to store the result in, may be a or b
+	 * @param 	a
+	 * 			the first operand
+	 * @param 	b
+	 * 			the second operand
+	 * @return	target, equal to a.times(b) with the universe of a
+	 * @see		#times(LatticeElement)
+	 */
+	public static SmallAntiChain timesInto(SmallAntiChain target, SmallAntiChain a, SmallAntiChain b) {
+		int spa = (int) span(a.theAntiChain), spb = (int) span(b.theAntiChain);
+		int aLen = a.theAntiChain.length;
+		int len = Math.max(aLen, wordsFor(Integer.SIZE - Integer.numberOfLeadingZeros(spa | spb)));
+		long[] sets = target.buffer(0, len);
+		System.arraycopy(a.theAntiChain, 0, sets, 0, aLen);
+		Arrays.fill(sets, aLen, len, 0L);
+		for (int i = a.nextSetBit(0); i >= 0; i = a.nextSetBit(i+1))
+			for (int j = b.nextSetBit(0); j >= 0; j = b.nextSetBit(j+1)) {
+				int k = (i & ~spb) | (j & ~spa) | (i & j);
+				sets[k >>> 6] |= 1L << k;
+			}
+		maximal(sets, len, sets, target.buffer(1, len));
+		return target.install(0, len, a.getUniverse());
+	}
+	
+	/**
+	 * Store the projection of a on b in target
+	 * 
+	 * @param 	target
+	 * 			the antichain to store the result in, may be a
+	 * @param 	a
+	 * 			the antichain to project
+	 * @param 	b
+	 * 			the set to project onto
+	 * @return	target, equal to a.project(b) with the universe of a
+	 * @see		#project(SmallBasicSet)
+	 */
+	public static SmallAntiChain projectInto(SmallAntiChain target, SmallAntiChain a, SmallBasicSet b) {
+		int len = a.theAntiChain.length;
+		long[] down = target.buffer(0, len);
+		long[] subSets = target.buffer(1, len);
+		downClosure(a.theAntiChain, len, down);
+		subSets(b.toLong(), subSets, len);
+		for (int w = 0; w < len; w++) down[w] &= subSets[w];
+		maximalOfDown(down, len, subSets);
+		return target.install(1, len, a.getUniverse());
+	}
+	
+	/**
+	 * Replace this by this + ac
+	 * 
+	 * @return	this
+	 * @see		#joinInto(SmallAntiChain, SmallAntiChain, SmallAntiChain)
+	 */
+	public SmallAntiChain joinInPlace(SmallAntiChain ac) {
+		return joinInto(this, this, ac);
+	}
+	
+	/**
+	 * Replace this by this.ac
+	 * 
+	 * @return	this
+	 * @see		#meetInto(SmallAntiChain, SmallAntiChain, SmallAntiChain)
+	 */
+	public SmallAntiChain meetInPlace(SmallAntiChain ac) {
+		return meetInto(this, this, ac);
+	}
+	
+	/**
+	 * Replace this by this x ac
+	 * 
+	 * @return	this
+	 * @see		#timesInto(SmallAntiChain, SmallAntiChain, SmallAntiChain)
+	 */
+	public SmallAntiChain timesInPlace(SmallAntiChain ac) {
+		return timesInto(this, this, ac);
+	}
+	
+	/**
+	 * Replace this by its projection on b
+	 * 
+	 * @return	this
+	 * @see		#projectInto(SmallAntiChain, SmallAntiChain, SmallBasicSet)
+	 */
+	public SmallAntiChain projectInPlace(SmallBasicSet b) {
+		return projectInto(this, this, b);
+	}
+	
+	/**
+	 * Replace this by this.minus(f)
+	 * 
+	 * @return	this
+	 * @see		#minus(SmallAntiChain)
+	 */
+	public SmallAntiChain minusInPlace(SmallAntiChain f) {
+		removeAll(f);
+		return this;
+	}
+	
+	/**
+	 * Make this antichain equal to ac, reusing the words of this if they suffice
+	 * 
+	 * @param 	ac
+	 * 			the antichain to copy
+	 * @return	this
+	 */
+	public SmallAntiChain assign(SmallAntiChain ac) {
+		int len = ac.theAntiChain.length;
+		if (theAntiChain.length < len) theAntiChain = new long[len];
+		System.arraycopy(ac.theAntiChain, 0, theAntiChain, 0, len);
+		Arrays.fill(theAntiChain, len, theAntiChain.length, 0L);
+		universe = ac.getUniverse();
+		return this;
+	}
+	
+	/*
+	 * Spare buffer k of at least len words, its contents are undefined
+	 */
+	private long[] buffer(int k, int len) {
+		if (buffers == null) buffers = new long[2][];
+		if (buffers[k] == null || buffers[k].length < len) buffers[k] = new long[len];
+		return buffers[k];
+	}
+	
+	/*
+	 * Make the first len words of spare buffer k the representation of this 
+	 * and keep the old representation as spare buffer
+	 */
+	private SmallAntiChain install(int k, int len, SmallBasicSet u) {
+		long[] words = buffers[k];
+		Arrays.fill(words, len, words.length, 0L);
+		buffers[k] = theAntiChain;
+		theAntiChain = words;
+		universe = u;
+		return this;
+	}
+	
+	/********************************************************
+	 * Closure kernels										*
+	 ********************************************************/
+	
+	/*
+	 * Bit i of the representation is bit (i & 63) of word (i >>> 6), 
+	 * so within a word the sets only differ in the elements 1,...,WordAntiChain.MAXELEMENT
+	 * and the higher elements select the word. 
+	 * The word kernels of WordAntiChain handle the low elements, 
+	 * element WordAntiChain.MAXELEMENT + k + 1 relates word w to word w ^ (1 << k).
+	 */
+	
+	/**
+	 * The number of words needed to represent antichains on {1,...,m}
+	 * 
+	 * @param 	m
+	 * 			the largest element
+	 * @return	1 if m <= WordAntiChain.MAXELEMENT, 2^(m - WordAntiChain.MAXELEMENT) otherwise
+	 */
+	static int wordsFor(int m) {
+		return m <= WordAntiChain.MAXELEMENT ? 1 : 1 << (m - WordAntiChain.MAXELEMENT);
+	}
+	
+	private static long word(long[] a, int w) {
+		return w < a.length ? a[w] : 0L;
+	}
+	
+	/**
+	 * Word w of the representation of this antichain
+	 */
+	long getWord(int w) {
+		return word(theAntiChain, w);
+	}
+	
+	/**
+	 * The family of all subsets of the sets in a
+	 * 
+	 * @param 	a
+	 * 			a family of sets as a sequence of words
+	 * @return	a new sequence of words with the same length as a, containing {s | s subseteq t for a t in a}
+	 */
+	static long[] downClosure(long[] a) {
+		long[] res = new long[a.length];
+		downClosure(a, a.length, res);
+		return res;
+	}
+	
+	/**
+	 * Store the family of all subsets of the sets in a in res
+	 * 
+	 * @param 	a
+	 * 			a family of sets as a sequence of words
+	 * @param 	len
+	 * 			the number of words of a to consider
+	 * @param 	res
+	 * 			the sequence of at least len words to store the down closure in, may be a itself
+	 */
+	static void downClosure(long[] a, int len, long[] res) {
+		for (int w = 0; w < len; w++)
+			res[w] = WordAntiChain.downClosure(a[w]);
+		for (int stride = 1; stride < len; stride <<= 1)
+			for (int w = len - 1; w >= 0; w--)
+				if ((w & stride) != 0) res[w ^ stride] |= res[w];
+	}
+	
+	/**
+	 * The sets that are obtained by removing one element from a set in a
+	 * 
+	 * @param 	a
+	 * 			a family of sets as a sequence of words
+	 * @param 	len
+	 * 			the number of words of a to consider
+	 * @param 	res
+	 * 			the sequence of at least len words to store {s \ {x} | s in a, x in s} in
+	 */
+	static void covered(long[] a, int len, long[] res) {
+		for (int w = 0; w < len; w++)
+			res[w] = WordAntiChain.covered(a[w]);
+		for (int stride = 1; stride < len; stride <<= 1)
+			for (int w = 0; w < len; w++)
+				if ((w & stride) != 0) res[w ^ stride] |= a[w];
+	}
+	
+	/**
+	 * Exchange two elements in every set of a family, in place
+	 * 
+	 * @param 	a
+	 * 			a family of sets as a sequence of words
+	 * @param 	len
+	 * 			the number of words of a to consider, a power of two and at least wordsFor(max(x, y))
+	 * @param 	x
+	 * 			an element
+	 * @param 	y
+	 * 			an element
+	 */
+	static void swap(long[] a, int len, int x, int y) {
+		if (x > y) {
+			int h = x; x = y; y = h;
+		}
+		if (y <= WordAntiChain.MAXELEMENT) {
+			for (int w = 0; w < len; w++)
+				a[w] = WordAntiChain.swap(a[w], x, y);
+		}
+		else if (x <= WordAntiChain.MAXELEMENT) {
+			// the sets containing x in word w move to the sets without x in word w | stride
+			int stride = 1 << (y - WordAntiChain.MAXELEMENT - 1), shift = 1 << (x - 1);
+			long m = WordAntiChain.containing(x);
+			for (int w = 0; w < len; w++)
+				if ((w & stride) == 0) {
+					long lo = a[w], hi = a[w | stride];
+					a[w] = (lo & ~m) | ((hi << shift) & m);
+					a[w | stride] = (hi & m) | ((lo & m) >>> shift);
+				}
+		}
+		else if (x < y) {
+			int sx = 1 << (x - WordAntiChain.MAXELEMENT - 1), sy = 1 << (y - WordAntiChain.MAXELEMENT - 1);
+			for (int w = 0; w < len; w++)
+				if ((w & sx) != 0 && (w & sy) == 0) {
+					long h = a[w];
+					a[w] = a[w - sx + sy];
+					a[w - sx + sy] = h;
+				}
+		}
+	}
+	
+	/**
+	 * The sets in a down closed family that are not contained in another set of the family
+	 * 
+	 * @param 	down
+	 * 			a family of sets closed under taking subsets
+	 * @param 	len
+	 * 			the number of words of down to consider
+	 * @param 	res
+	 * 			the sequence of at least len words, different from down, to store the maximal sets in
+	 */
+	static void maximalOfDown(long[] down, int len, long[] res) {
+		covered(down, len, res);
+		for (int w = 0; w < len; w++)
+			res[w] = down[w] & ~res[w];
+	}
+	
+	/**
+	 * The sets in a family that are not contained in another set of the family
+	 * 
+	 * @param 	a
+	 * 			a family of sets
+	 * @param 	len
+	 * 			the number of words of a to consider
+	 * @param 	res
+	 * 			the sequence of at least len words to store the maximal sets in, may be a itself
+	 * @param 	scratch
+	 * 			a sequence of at least len words, different from a and res, used as working space
+	 */
+	static void maximal(long[] a, int len, long[] res, long[] scratch) {
+		covered(a, len, scratch);
+		downClosure(scratch, len, scratch);
+		for (int w = 0; w < len; w++)
+			res[w] = a[w] & ~scratch[w];
+	}
+	
+	/**
+	 * Replace every set s in a by s xor u
+	 * 
+	 * @param 	a
+	 * 			a family of sets, replaced by the result
+	 * @param 	len
+	 * 			the number of words of a, at least wordsFor of the maximum of u
+	 * @param 	u
+	 * 			the set to take the symmetric difference with
+	 */
+	static void complement(long[] a, int len, long u) {
+		long low = u & ((1L << WordAntiChain.MAXELEMENT) - 1);
+		for (int w = 0; w < len; w++)
+			a[w] = WordAntiChain.complement(a[w], low);
+		int high = (int) (u >>> WordAntiChain.MAXELEMENT);
+		for (int w = 0; w < len; w++) {
+			int v = w ^ high;
+			if (v > w) {
+				long temp = a[w];
+				a[w] = a[v];
+				a[v] = temp;
+			}
 		}
 	}
 	
+	/**
+	 * The family of all subsets of one set
+	 * 
+	 * @param 	s
+	 * 			a set as in {@link SmallBasicSet#toLong()}
+	 * @param 	res
+	 * 			the sequence of at least len words to store {t | t subseteq s} in
+	 * @param 	len
+	 * 			the number of words to fill
+	 */
+	static void subSets(long s, long[] res, int len) {
+		long low = WordAntiChain.subSets(s);
+		int high = (int) (s >>> WordAntiChain.MAXELEMENT);
+		for (int w = 0; w < len; w++)
+			res[w] = (w & ~high) == 0 ? low : 0L;
+	}
+	
+	/**
+	 * The union of all sets in a
+	 * 
+	 * @param 	a
+	 * 			a family of sets as a sequence of words
+	 * @return	the span of a as in {@link SmallBasicSet#toLong()}
+	 */
+	static long span(long[] a) {
+		long res = 0L;
+		for (int w = 0; w < a.length; w++)
+			if (a[w] != 0)
+				res |= WordAntiChain.span(a[w]) | ((long) w << WordAntiChain.MAXELEMENT);
+		return res;
+	}
+	
+	/**
+	 * @see 	#join(LatticeElement)
+	 */
+	static long[] join(long[] a, long[] b) {
+		int len = Math.max(a.length, b.length);
+		long[] union = new long[len];
+		for (int w = 0; w < len; w++)
+			union[w] = word(a, w) | word(b, w);
+		maximal(union, len, union, new long[len]);
+		return union;
+	}
+	
+	/**
+	 * @see 	#le(LatticeElement)
+	 */
+	static boolean le(long[] a, long[] b) {
+		long[] down = downClosure(b);
+		for (int w = 0; w < a.length; w++)
+			if ((a[w] & ~word(down, w)) != 0)
+				return false;
+		return true;
+	}
+	
+	/*
+	 * Single bits of the representation
+	 */
+	
+	private boolean getBit(int i) {
+		return (word(theAntiChain, i >>> 6) & (1L << i)) != 0;
+	}
+	
+	private void setBit(int i) {
+		int w = i >>> 6;
+		if (w >= theAntiChain.length)
+			theAntiChain = Arrays.copyOf(theAntiChain, Math.max(2 * theAntiChain.length, w + 1));
+		theAntiChain[w] |= 1L << i;
+	}
+	
+	private void clearBit(int i) {
+		int w = i >>> 6;
+		if (w < theAntiChain.length)
+			theAntiChain[w] &= ~(1L << i);
+	}
+	
+	private int nextSetBit(int from) {
+		int w = from >>> 6;
+		if (w >= theAntiChain.length) return -1;
+		long word = theAntiChain[w] & (-1L << from);
+		while (word == 0) {
+			if (++w == theAntiChain.length) return -1;
+			word = theAntiChain[w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+	
+	int wordsInUse() {
+		int len = theAntiChain.length;
+		while (len > 0 && theAntiChain[len - 1] == 0) len--;
+		return len;
+	}
+
 	/********************************************************
 	 * Useful Set<SmallBasicSet> methods					*
 	 ********************************************************/
@@ -491,7 +1053,7 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 */
 	public boolean add(SmallBasicSet s) {
 		if(universe.hasAsSubset(s)) {
-			theAntiChain.set((int) s.toLong());
+			setBit((int) s.toLong());
 			return true;
 		}
 		return false;
@@ -506,9 +1068,9 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 */
 	public boolean remove(SmallBasicSet s) {
 		int temp = (int) s.toLong();
-		if(!theAntiChain.get(temp))
+		if(!getBit(temp))
 			return false;
-		theAntiChain.set(temp, false);
+		clearBit(temp);
 		return true;
 	}
 	
@@ -521,22 +1083,30 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 */
 	public boolean removeAll(SmallAntiChain c) {
 		boolean result = false;
-		for(int i = c.theAntiChain.nextSetBit(0); i >= 0; i = c.theAntiChain.nextSetBit(i+1)) {
-			if(remove(new SmallBasicSet(i)) && !result && !result)
+		for(int w = Math.min(theAntiChain.length, c.theAntiChain.length) - 1; w >= 0; w--) {
+			if((theAntiChain[w] & c.theAntiChain[w]) != 0)
 				result = true;
+			theAntiChain[w] &= ~c.theAntiChain[w];
 		}
 		return result;
 	}
 
+	/**
+	 * Remove all sets from this antichain
+	 */
+	public void clear() {
+		Arrays.fill(theAntiChain, 0L);
+	}
+
 	/**
 	 * Check whether or not this set is contained in this antichain
 	 * 
 	 * @param 	a
 	 * 			The set to be checked
-	 * @return	theAntiChain.get(a.toIntRepresentation())
+	 * @return	true iff the bit for a is set in the representation of this antichain
 	 */
 	public boolean contains(SmallBasicSet a) {
-		return theAntiChain.get((int) a.toLong());
+		return getBit((int) a.toLong());
 	}
 
 	/**
@@ -545,7 +1115,10 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 * @return	the number of 1-bits in its representation.
 	 */
 	public int size() {
-		return theAntiChain.cardinality();
+		int res = 0;
+		for(long word : theAntiChain)
+			res += Long.bitCount(word);
+		return res;
 	}
 	
 	/**
@@ -554,7 +1127,7 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 * @return	this.size() != 0
 	 */
 	public boolean isEmpty() {
-		return theAntiChain.isEmpty();
+		return wordsInUse() == 0;
 	}
 	
 	/********************************************************
@@ -575,9 +1148,7 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	}
 	
 	protected SmallAntiChain join(SmallAntiChain ac) {
-		SmallAntiChain result = new SmallAntiChain(this);
-		result.addConditionallyAll(ac);
-		return result;
+		return new SmallAntiChain(join(theAntiChain, ac.theAntiChain), getUniverse());
 	}
 
 	/**
@@ -594,11 +1165,13 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	}
 	
 	protected SmallAntiChain meet(SmallAntiChain ac) {
-		SmallAntiChain result = SmallAntiChain.emptyAntiChain(this.getUniverse());
-		for(int i = theAntiChain.nextSetBit(0); i >= 0; i = theAntiChain.nextSetBit(i+1))
-			for(int j = ac.theAntiChain.nextSetBit(0); j >= 0; j = ac.theAntiChain.nextSetBit(j+1)) 
-				result.addConditionally(new SmallBasicSet(j).intersection(new SmallBasicSet(i)));
-		return result;
+		long[] down = downClosure(theAntiChain);
+		long[] acDown = downClosure(ac.theAntiChain);
+		int len = Math.min(down.length, acDown.length);
+		for(int w = 0; w < len; w++)
+			down[w] &= acDown[w];
+		maximalOfDown(down, len, acDown);
+		return new SmallAntiChain(Arrays.copyOf(acDown, len), getUniverse());
 	}
 
 	/**
@@ -615,24 +1188,16 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	}
 	
 	protected SmallAntiChain times(SmallAntiChain ac) {
-		SmallAntiChain result = new SmallAntiChain(this);
-		if(theAntiChain.equals(SmallAntiChain.emptyAntiChain) || 
-				ac.theAntiChain.equals(SmallAntiChain.emptyAntiChain))
-			return SmallAntiChain.emptyAntiChain();
-		if(theAntiChain.equals(SmallAntiChain.emptySetAntiChain))
-			return new SmallAntiChain(ac);
-		if(ac.theAntiChain.equals(SmallAntiChain.emptySetAntiChain))
-			return new SmallAntiChain(this);
-		
-		SmallBasicSet x,y;
-		SmallBasicSet spthis = this.sp(), spe = ac.sp();
-		for(int i = theAntiChain.nextSetBit(0); i >= 0; i = theAntiChain.nextSetBit(i+1))
-			for(int j = ac.theAntiChain.nextSetBit(0); j >= 0; j = ac.theAntiChain.nextSetBit(j+1)) {
-				x = new SmallBasicSet(i);
-				y = new SmallBasicSet(j);
-				result.addConditionally(x.minus(spe).union(y.minus(spthis)).union(x.intersection(y)));
+		int spthis = (int) span(theAntiChain), spe = (int) span(ac.theAntiChain);
+		int len = Math.max(theAntiChain.length, wordsFor(Integer.SIZE - Integer.numberOfLeadingZeros(spthis | spe)));
+		long[] sets = Arrays.copyOf(theAntiChain, len);
+		for(int i = nextSetBit(0); i >= 0; i = nextSetBit(i+1))
+			for(int j = ac.nextSetBit(0); j >= 0; j = ac.nextSetBit(j+1)) {
+				int k = (i & ~spe) | (j & ~spthis) | (i & j);
+				sets[k >>> 6] |= 1L << k;
 			}
-		return result;
+		maximal(sets, len, sets, new long[len]);
+		return new SmallAntiChain(sets, getUniverse());
 	}
 
 	/**
@@ -642,21 +1207,17 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 */
 	@Override
 	public LatticeElement dual() {
-		SmallAntiChain tres, result = SmallAntiChain.emptyAntiChain(this.getUniverse());
-		result.add(this.getUniverse());
-		SmallBasicSet max, a, k;
-		for(int i = theAntiChain.nextSetBit(0); i >= 0; i = theAntiChain.nextSetBit(i+1)) {
-			tres = SmallAntiChain.emptyAntiChain(this.getUniverse());
-			k = new SmallBasicSet(i);
-			max = this.getUniverse().minus(k);
-			for (int j = result.theAntiChain.nextSetBit(0); j >= 0; j = result.theAntiChain.nextSetBit(j+1)) {
-				a = new SmallBasicSet(j);
-				if (!a.hasAsSubset(max)) tres.addConditionally(a);
-				else for (int x:max) tres.addConditionally(a.minus(x));
-			}
-			result = tres;
-		}
-		return result;
+		long u = getUniverse().toLong();
+		int len = wordsFor(getUniverse().maximum());
+		// a set s is in the complement iff u\s is a subset of a set in this
+		long[] complement = Arrays.copyOf(downClosure(theAntiChain), len);
+		complement(complement, len, u);
+		long[] result = new long[len];
+		subSets(u, result, len);
+		for(int w = 0; w < len; w++)
+			complement[w] = result[w] & ~complement[w];
+		maximalOfDown(complement, len, result);
+		return new SmallAntiChain(result, getUniverse());
 	}
 
 	/**
@@ -672,11 +1233,7 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	}
 	
 	protected boolean ge(SmallAntiChain e1) {
-		for(int i = e1.theAntiChain.nextSetBit(0); i >= 0; i = e1.theAntiChain.nextSetBit(i+1)) {
-			if(!ge(new SmallBasicSet(i)))
-				return false;
-		}
-		return true;
+		return le(e1.theAntiChain, theAntiChain);
 	}
 
 	/**
@@ -692,17 +1249,7 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	}
 	
 	protected boolean le(SmallAntiChain e1) {
-		boolean ok;
-		for(int i = theAntiChain.nextSetBit(0); i >= 0; i = theAntiChain.nextSetBit(i+1)) {
-			ok = false;
-			for(int j = e1.theAntiChain.nextSetBit(0); j >= 0; j = e1.theAntiChain.nextSetBit(j+1))
-				if(new SmallBasicSet(j).hasAsSubset(new SmallBasicSet(i))) {
-					ok = true;
-					break;
-				}
-			if(!ok) return false;
-		}
-		return true;
+		return le(theAntiChain, e1.theAntiChain);
 	}
 
 	/**
@@ -714,7 +1261,35 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 */
 	@Override
 	public boolean equals(LatticeElement e) {
-		return theAntiChain.equals(((SmallAntiChain) e).theAntiChain);
+		long[] other = ((SmallAntiChain) e).theAntiChain;
+		int len = Math.max(theAntiChain.length, other.length);
+		for(int w = 0; w < len; w++)
+			if(word(theAntiChain, w) != word(other, w))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Check whether o is a SmallAntiChain with the same sets as this
+	 * 
+	 * @param	o
+	 * 			The object to compare with
+	 * @return	true iff o is a SmallAntiChain and this.equals((LatticeElement) o)
+	 */
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof SmallAntiChain && equals((LatticeElement) o);
+	}
+	
+	/**
+	 * A hash code consistent with equals, the universe is not taken into account
+	 */
+	@Override
+	public int hashCode() {
+		int res = 1;
+		for (int w = wordsInUse() - 1; w >= 0; w--)
+			res = 31 * res + (int) (theAntiChain[w] ^ (theAntiChain[w] >>> 32));
+		return res;
 	}
 
 	/**
@@ -728,16 +1303,15 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 */
 	@Override
 	public int compareTo(SmallAntiChain o) {
-		int i = this.theAntiChain.length();
-		int j = o.theAntiChain.length();
+		int i = this.wordsInUse();
+		int j = o.wordsInUse();
 		if(i - j != 0)
 			return i - j;
 		
-		do {
-			i = this.theAntiChain.previousSetBit(i - 1);
-			j = o.theAntiChain.previousSetBit(j - 1);
-			if(i != j) return i - j;
-		} while(i > 0 && j > 0);
+		while(--i >= 0) {
+			int c = WordAntiChain.compare(theAntiChain[i], o.theAntiChain[i]);
+			if(c != 0) return c;
+		}
 		
 		return 0;
 	}
@@ -751,7 +1325,7 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	public Iterator<SmallBasicSet> iterator() {
 		return new Iterator<SmallBasicSet>() {
 			
-			private int current = theAntiChain.nextSetBit(0);
+			private int current = nextSetBit(0);
 
 			@Override
 			public boolean hasNext() {
@@ -761,7 +1335,7 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 			@Override
 			public SmallBasicSet next() {
 				int temp = current;
-				current = theAntiChain.nextSetBit(current + 1);
+				current = nextSetBit(current + 1);
 				return new SmallBasicSet(temp);
 			}
 
@@ -778,11 +1352,11 @@ public class SmallAntiChain implements Iterable<SmallBasicSet>, Comparable<Small
 	 */
 	@Override
 	public String toString() {
-		if (theAntiChain.isEmpty()) return "{}";
+		if (isEmpty()) return "{}";
 		String res = "{";
-		for (int i = theAntiChain.nextSetBit(0); i >= 0; i = theAntiChain.nextSetBit(i+1)) {
+		for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i+1)) {
 			res += new SmallBasicSet(i) + ",";
 		}
 		return res.substring(0, res.lastIndexOf(',')) + "}";
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,138 @@
+package amfsmall;
+
+import java.util.Arrays;
+
+import auxiliary.BoundedCache;
+
+/**
+ * The cache behind {@link SmallAntiChain#standard()}, shared by all callers and threads.
+ * The cache is off until it is enabled, then every call of standard() looks up its antichain.
+ *
+ * The key is the representation of an antichain, the value the representation of its standard form.
+ * The tasks of the generation of the equivalence classes meet the same antichains over and over,
+ * with the cache the search through the permutations is done once per antichain as long as it is kept.
+ * The number of entries is bounded, the least recently used ones are evicted.
+ * thread safe
+ */
+public final class StandardCache {
+
+	/**
+	 * The default maximal number of antichains kept
+	 */
+	public static final int CAPACITY = 1 << 18;
+
+	// null as long as the cache is not enabled
+	private static volatile BoundedCache<Key, long[]> cache;
+
+	private StandardCache() {
+	}
+
+	/**
+	 * Enable the cache with the default capacity
+	 */
+	public static void enable() {
+		enable(CAPACITY);
+	}
+
+	/**
+	 * Enable the cache, nothing changes if it is enabled already
+	 *
+	 * @param 	capacity
+	 * 			the maximal number of antichains kept, positive
+	 */
+	public static synchronized void enable(int capacity) {
+		if (cache == null)
+			cache = new BoundedCache<Key, long[]>(capacity);
+	}
+
+	/**
+	 * @return	whether standard() uses the cache
+	 */
+	public static boolean isEnabled() {
+		return cache != null;
+	}
+
+	/**
+	 * @param 	ac
+	 * 			an antichain
+	 * @return	the words of the standard form of ac, null if it is not in the cache
+	 * @pre		isEnabled()
+	 */
+	static long[] get(SmallAntiChain ac) {
+		return cache.get(new Key(ac));
+	}
+
+	/**
+	 * @param 	ac
+	 * 			an antichain
+	 * @param 	standard
+	 * 			the standard form of ac
+	 * @pre		isEnabled()
+	 */
+	static void put(SmallAntiChain ac, SmallAntiChain standard) {
+		cache.put(new Key(ac), words(standard));
+	}
+
+	/**
+	 * @return	the number of standard forms found in the cache, 0 if it is not enabled
+	 */
+	public static long hits() {
+		BoundedCache<Key, long[]> c = cache;
+		return c == null ? 0 : c.hits();
+	}
+
+	/**
+	 * @return	the number of standard forms that had to be computed while the cache was enabled
+	 */
+	public static long misses() {
+		BoundedCache<Key, long[]> c = cache;
+		return c == null ? 0 : c.misses();
+	}
+
+	/**
+	 * Remove all entries, the counters are kept
+	 */
+	public static void clear() {
+		BoundedCache<Key, long[]> c = cache;
+		if (c != null) c.clear();
+	}
+
+	/**
+	 * @return	the number of entries and the counters
+	 */
+	public static String statistics() {
+		BoundedCache<Key, long[]> c = cache;
+		return c == null ? "disabled" : c.toString();
+	}
+
+	/*
+	 * the words of ac up to the highest one in use, at least one
+	 */
+	private static long[] words(SmallAntiChain ac) {
+		long[] res = new long[Math.max(1, ac.wordsInUse())];
+		for (int w = 0; w < res.length; w++)
+			res[w] = ac.getWord(w);
+		return res;
+	}
+
+	private static final class Key {
+
+		private final long[] words;
+		private final int hash;
+
+		Key(SmallAntiChain ac) {
+			words = words(ac);
+			hash = Arrays.hashCode(words);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && Arrays.equals(words, ((Key) o).words);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
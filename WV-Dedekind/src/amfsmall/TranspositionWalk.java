@@ -0,0 +1,105 @@
+package amfsmall;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A walk through all permutations of a sequence of elements in which every step exchanges two elements.
+ *
+ * The permutations are visited in the order of Heap's algorithm, starting with the identity.
+ * After step t the permutation maps elements[i] to image(i), and it is the permutation of step t - 1
+ * followed by the transposition of first() and second(). Something that is mapped by the permutations,
+ * like an antichain, can therefore be kept up to date by exchanging two elements per step
+ * instead of being mapped from scratch.
+ * not thread safe
+ */
+public class TranspositionWalk {
+
+	private final int[] elements;
+	private final int[] arrangement;
+	private final int[] counters;
+	private int level;
+	private int first, second;
+
+	/**
+	 * Start a walk at the identity
+	 *
+	 * @param 	elements
+	 * 			the distinct elements to permute
+	 */
+	public TranspositionWalk(int[] elements) {
+		this.elements = elements.clone();
+		arrangement = elements.clone();
+		counters = new int[elements.length];
+		level = 1;
+	}
+
+	/**
+	 * Step to the next permutation
+	 *
+	 * @return	false iff all permutations have been visited, in which case the walk does not move
+	 */
+	public boolean next() {
+		while (level < arrangement.length) {
+			if (counters[level] < level) {
+				int i = (level & 1) == 0 ? 0 : counters[level];
+				first = arrangement[i];
+				second = arrangement[level];
+				arrangement[i] = second;
+				arrangement[level] = first;
+				counters[level]++;
+				level = 1;
+				return true;
+			}
+			counters[level] = 0;
+			level++;
+		}
+		return false;
+	}
+
+	/**
+	 * @return	one of the elements exchanged by the last step
+	 * @throws	NoSuchElementException
+	 * 			if no step has been taken
+	 */
+	public int first() {
+		if (first == second)
+			throw new NoSuchElementException("The walk is still at the identity");
+		return first;
+	}
+
+	/**
+	 * @return	the other element exchanged by the last step
+	 * @throws	NoSuchElementException
+	 * 			if no step has been taken
+	 */
+	public int second() {
+		if (first == second)
+			throw new NoSuchElementException("The walk is still at the identity");
+		return second;
+	}
+
+	/**
+	 * @return	the number of elements permuted
+	 */
+	public int length() {
+		return elements.length;
+	}
+
+	/**
+	 * @param 	i
+	 * 			a position, 0 <= i < length()
+	 * @return	the element to which the current permutation maps the element at position i
+	 */
+	public int image(int i) {
+		return arrangement[i];
+	}
+
+	/**
+	 * @param 	i
+	 * 			a position, 0 <= i < length()
+	 * @return	the element at position i of the sequence the walk was started with
+	 */
+	public int element(int i) {
+		return elements[i];
+	}
+}
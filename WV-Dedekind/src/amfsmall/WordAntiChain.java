@@ -0,0 +1,158 @@
+package amfsmall;
+
+/**
+ * Kernels for antichains on a universe of at most six elements, packed in one long.
+ * Bit i of the word is set iff the set with representation i (see {@link SmallBasicSet#toLong()})
+ * is in the antichain, so the word is exactly the BitSet behind the corresponding {@link SmallAntiChain}.
+ *
+ * The kernels work on the whole word at once by shifting and masking per dimension,
+ * without allocating anything. SmallAntiChain applies them to every word of its BitSet.
+ */
+final class WordAntiChain {
+
+	/**
+	 * The largest element a set in a word can contain
+	 */
+	final static int MAXELEMENT = 6;
+
+	/*
+	 * DIMENSION[d] has bit i set iff the set with representation i contains element d+1
+	 */
+	private static final long[] DIMENSION = {
+		0xAAAAAAAAAAAAAAAAL,
+		0xCCCCCCCCCCCCCCCCL,
+		0xF0F0F0F0F0F0F0F0L,
+		0xFF00FF00FF00FF00L,
+		0xFFFF0000FFFF0000L,
+		0xFFFFFFFF00000000L
+	};
+
+	private WordAntiChain() {
+	}
+
+	/********************************************************
+	 * Word kernels											*
+	 ********************************************************/
+
+	/**
+	 * The family of all subsets of the sets in a
+	 *
+	 * @param 	a
+	 * 			a family of sets
+	 * @return 	{s | s subseteq t for a t in a}
+	 */
+	static long downClosure(long a) {
+		a |= (a & DIMENSION[0]) >>> 1;
+		a |= (a & DIMENSION[1]) >>> 2;
+		a |= (a & DIMENSION[2]) >>> 4;
+		a |= (a & DIMENSION[3]) >>> 8;
+		a |= (a & DIMENSION[4]) >>> 16;
+		a |= (a & DIMENSION[5]) >>> 32;
+		return a;
+	}
+
+	/**
+	 * The family of all subsets of one set
+	 *
+	 * @param 	s
+	 * 			a set as in {@link SmallBasicSet#toLong()}
+	 * @return 	{t | t subseteq s}
+	 */
+	static long subSets(long s) {
+		long res = -1L;
+		for (int d = 0; d < MAXELEMENT; d++)
+			if ((s & (1L << d)) == 0) res &= ~DIMENSION[d];
+		return res;
+	}
+
+	/**
+	 * The sets that are obtained by removing one element from a set in a
+	 *
+	 * @param 	a
+	 * 			a family of sets
+	 * @return 	{s \ {x} | s in a, x in s}
+	 */
+	static long covered(long a) {
+		long res = (a & DIMENSION[0]) >>> 1;
+		res |= (a & DIMENSION[1]) >>> 2;
+		res |= (a & DIMENSION[2]) >>> 4;
+		res |= (a & DIMENSION[3]) >>> 8;
+		res |= (a & DIMENSION[4]) >>> 16;
+		res |= (a & DIMENSION[5]) >>> 32;
+		return res;
+	}
+
+	/**
+	 * The union of all sets in an antichain
+	 *
+	 * @param 	a
+	 * 			an antichain
+	 * @return 	the span of a as in {@link SmallBasicSet#toLong()}
+	 */
+	static long span(long a) {
+		long res = 0L;
+		for (int d = 0; d < MAXELEMENT; d++) {
+			long x = a & DIMENSION[d];
+			res |= ((x | -x) >>> 63) << d;
+		}
+		return res;
+	}
+
+	/**
+	 * Replace every set s in a by s xor universe
+	 *
+	 * @param 	a
+	 * 			a family of sets
+	 * @param 	universe
+	 * 			the set to take the symmetric difference with
+	 * @return 	{s ^ universe | s in a}
+	 */
+	static long complement(long a, long universe) {
+		for (int d = 0; d < MAXELEMENT; d++)
+			if ((universe & (1L << d)) != 0) {
+				int shift = 1 << d;
+				a = ((a & DIMENSION[d]) >>> shift) | ((a & ~DIMENSION[d]) << shift);
+			}
+		return a;
+	}
+
+	/**
+	 * Exchange two elements in every set of a family
+	 *
+	 * @param 	a
+	 * 			a family of sets
+	 * @param 	x
+	 * 			an element, 1 <= x <= MAXELEMENT
+	 * @param 	y
+	 * 			an element, 1 <= y <= MAXELEMENT
+	 * @return 	the image of a under the transposition of x and y
+	 */
+	static long swap(long a, int x, int y) {
+		if (x == y) return a;
+		if (x > y) return swap(a, y, x);
+		// the sets containing x and not y move up to the sets containing y and not x
+		int shift = (1 << (y - 1)) - (1 << (x - 1));
+		long t = (a ^ (a >>> shift)) & DIMENSION[x - 1] & ~DIMENSION[y - 1];
+		return a ^ t ^ (t << shift);
+	}
+
+	/**
+	 * The sets containing an element
+	 *
+	 * @param 	x
+	 * 			an element, 1 <= x <= MAXELEMENT
+	 * @return 	{s | x in s}
+	 */
+	static long containing(int x) {
+		return DIMENSION[x - 1];
+	}
+
+	/**
+	 * Compare two words as the encodings of antichains
+	 *
+	 * @return 	< 0, 0 or > 0 if a is less than, equal to or greater than b as unsigned numbers
+	 */
+	static int compare(long a, long b) {
+		return Long.compare(a + Long.MIN_VALUE, b + Long.MIN_VALUE);
+	}
+}
@@ -0,0 +1,64 @@
+package antichains;
+
+import java.util.Arrays;
+
+import amfsmall.AntiChainSolver.Generator;
+import amfsmall.ClassTerms.Loop;
+import amfsmall.StandardCache;
+import auxiliary.Arithmetic;
+
+/**
+ * The options of the drivers computing a Dedekind number, as given on their command line.
+ * immutable
+ */
+public class Options {
+
+	/**
+	 * The options of a driver without any option on its command line
+	 */
+	public static final Options DEFAULT = new Options(Loop.FUNCTIONS, Generator.ALGORITHM7, Arithmetic.WIDE, false);
+
+	/**
+	 * Whether the outer loop runs over all functions, over one function per class or both
+	 */
+	public final Loop loop;
+
+	/**
+	 * The generator of the equivalence classes
+	 */
+	public final Generator generator;
+
+	/**
+	 * The representation of the partial sums, the same on every node
+	 */
+	public final Arithmetic arithmetic;
+
+	/**
+	 * Whether the standard forms of the antichains are kept in the {@link StandardCache}
+	 */
+	public final boolean standardCache;
+
+	public Options(Loop loop, Generator generator, Arithmetic arithmetic, boolean standardCache) {
+		this.loop = loop;
+		this.generator = generator;
+		this.arithmetic = arithmetic;
+		this.standardCache = standardCache;
+	}
+
+	/**
+	 * @param 	args
+	 * 			the arguments of a driver
+	 * @return	the options in args, [-classes | -verify] [-orderly] [-crt] [-standardcache]
+	 */
+	public static Options of(String[] args) {
+		return new Options(Loop.of(args), Generator.of(args), Arithmetic.of(args), Arrays.asList(args).contains("-standardcache"));
+	}
+
+	/**
+	 * Enable the caches these options ask for
+	 */
+	public void enableCaches() {
+		if (standardCache)
+			StandardCache.enable();
+	}
+}
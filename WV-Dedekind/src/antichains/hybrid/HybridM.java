@@ -10,21 +10,28 @@ import java.lang.management.ThreadMXBean;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.SortedMap;
-import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 
 import mpi.MPI;
 import mpi.MPIException;
 import amfsmall.AntiChainInterval;
-import amfsmall.AntiChainSolver;
+import amfsmall.AntiChainSolver.Generator;
+import amfsmall.ClassTerms;
+import amfsmall.ClassTerms.Loop;
+import amfsmall.DownSetIndex;
+import amfsmall.PatricksCache;
+import amfsmall.PatricksGraph;
+import amfsmall.RepresentativeTable;
 import amfsmall.SmallAntiChain;
 import amfsmall.SmallBasicSet;
-import amfsmall.Storage;
+import antichains.Options;
+import auxiliary.Arithmetic;
+import auxiliary.PartialSum;
 
 /**
  * A class that allows to calculate the nth Dedekind number over MPI in a hybrid fashion.
@@ -38,10 +45,14 @@ public class HybridM {
 	/** Tag to indicate the length of an object is being sent */
 	public static final int NUMTAG = 1;
 	
-	private ExecutorService pool;
+	private ForkJoinPool pool;
 	private int dedekind;
 	private int nOfProc;
 	private int myRank;
+	private PatricksCache cache;
+	private Loop loop;
+	private Generator generator;
+	private Arithmetic arithmetic;
 	
 	/**
 	 * Initialise every node with its buffers and set the parameters.
@@ -54,6 +65,25 @@ public class HybridM {
 	 * 			The rank of this node.
 	 */
 	public HybridM(int n, int nOfProc, int rank) {
+		this(n, nOfProc, rank, null, Options.DEFAULT);
+	}
+	
+	/**
+	 * Initialise every node with its buffers and set the parameters.
+	 * 
+	 * @param 	n
+	 * 			The dedekind to calculate
+	 * @param 	nOfProc
+	 * 			The number of processors available.
+	 * @param	rank
+	 * 			The rank of this node.
+	 * @param	cache
+	 * 			The cache for the coefficients of Patrick shared by the threads of this node, 
+	 * 			null to compute them per antichain in a batch.
+	 * @param	options
+	 * 			The outer loop, the generator of the equivalence classes and the representation of the sums.
+	 */
+	public HybridM(int n, int nOfProc, int rank, PatricksCache cache, Options options) {
 		if(n < 2) {
 			System.out.println("For 0, the dedekind number is:\t2\nFor 1, the dedekind number is:\t3\n");
 			throw new IllegalArgumentException("Enter a number greater or equal to 2\n");
@@ -62,8 +92,12 @@ public class HybridM {
 		this.dedekind = n - 2;
 		this.nOfProc = nOfProc;
 		this.myRank = rank;
+		this.cache = cache;
+		this.loop = options.loop;
+		this.generator = options.generator;
+		this.arithmetic = options.arithmetic;
 		//make a thread pool that cannot have more threads than there are processors visible to the JVM
-		this.pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 	}
 	
 	/**
@@ -74,7 +108,6 @@ public class HybridM {
 	 * @throws InterruptedException if one of the threads of this program was interrupted
 	 * @throws ExecutionException if something went wrong with the computation in a certain thread
 	 */
-	@SuppressWarnings("unchecked")
 	private void doIt() throws MPIException, InterruptedException, ExecutionException {
 		long startTime = System.currentTimeMillis();
 		long cpuTime = getCpuTime();
@@ -88,63 +121,114 @@ public class HybridM {
 		byte[] bcastbuf = new byte[num[0]];
 		MPI.COMM_WORLD.bcast(bcastbuf, bcastbuf.length, MPI.BYTE, 0);
 		
-		SortedMap<SmallAntiChain, ?>[] obj = (SortedMap[]) deserialize(bcastbuf);
-
-		SortedMap<SmallAntiChain, Long> functions = (SortedMap<SmallAntiChain, Long>) obj[0];
-		SortedMap<SmallAntiChain, BigInteger> leftIntervalSize = (SortedMap<SmallAntiChain, BigInteger>) obj[1];
+		RepresentativeTable functions = (RepresentativeTable) deserialize(bcastbuf);
 		
 		timePair = doTime(String.format("Proces %d started threading at", myRank), timePair);
 		timeCPU = doCPUTime("CPU ", timeCPU);
 
-		//do part of work
-		BigInteger sum = doThreading(functions, leftIntervalSize);
+		//do part of work, for verification both ways
+		PartialSum sum = doThreading(functions, loop == Loop.CLASSES);
+		PartialSum classSum = loop == Loop.VERIFY ? doThreading(functions, true) : null;
 		
 		timePair = doTime(String.format("Proces %d calculated %s", myRank, sum), timePair);
 		timeCPU = doCPUTime("CPU ", timeCPU);
+		if(cache != null)
+			System.out.println(String.format("Proces %d coefficient cache %s", myRank, cache));
 		
-		//send result to the collecting node
-		byte[] bigbuf = sum.toByteArray();
-		MPI.COMM_WORLD.send(new int[]{bigbuf.length}, 1, MPI.INT, 0, NUMTAG);
-		MPI.COMM_WORLD.send(bigbuf, bigbuf.length, MPI.BYTE, 0, 0);		
+		//send the words of the result to the collecting node
+		long[] sumbuf = sum.toLongArray();
+		MPI.COMM_WORLD.send(new int[]{sumbuf.length}, 1, MPI.INT, 0, NUMTAG);
+		MPI.COMM_WORLD.send(sumbuf, sumbuf.length, MPI.LONG, 0, 0);		
+		if(classSum != null) {
+			sumbuf = classSum.toLongArray();
+			MPI.COMM_WORLD.send(new int[]{sumbuf.length}, 1, MPI.INT, 0, NUMTAG);
+			MPI.COMM_WORLD.send(sumbuf, sumbuf.length, MPI.LONG, 0, 0);
+		}
 	}
 
 	/**
 	 * Perform a part of the job given the results of the non-parallel part.
 	 * 
-	 * @param functions The representatives for the equivalence classes
-	 * @param leftIntervalSize The left interval sizes
-	 * @return a BigInteger containing the partial result of all work for this node
+	 * @param functions The representatives for the equivalence classes with their left interval sizes
+	 * @param classes Whether the outer loop runs over the representatives, with the terms of their classes
+	 * @return the partial result of all work for this node
 	 * @throws InterruptedException if one of the threads got interrupted
 	 * @throws ExecutionException if something went wrong with the computation in a certain thread
 	 */
-	private BigInteger doThreading(final SortedMap<SmallAntiChain, Long> functions, final SortedMap<SmallAntiChain, BigInteger> leftIntervalSize)
+	private PartialSum doThreading(final RepresentativeTable functions, boolean classes)
 			throws InterruptedException, ExecutionException {
 		int counter = 0;
+		final DownSetIndex index = new DownSetIndex(functions);
 		final SmallAntiChain u = SmallAntiChain.oneSetAntiChain(SmallBasicSet.universe(dedekind));
-		Iterator<SmallAntiChain> it2 = AntiChainInterval.fullSpace(dedekind).fastIterator();
-		ArrayList<Future<BigInteger>> results = new ArrayList<>();
 		
-		//iterate over all antichains
+		if(!classes) {
+			//the space is split into intervals that are dealt out over the nodes, the pool reduces every interval
+			AntiChainInterval.Reducer<PartialSum> reducer = new AntiChainInterval.Reducer<PartialSum>() {
+				//the arrays and the graph are reused by each thread of the pool
+				private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+					@Override
+					protected Scratch initialValue() {
+						return new Scratch(functions.size());
+					}
+				};
+
+				@Override
+				public PartialSum identity() {
+					return arithmetic.zero();
+				}
+
+				@Override
+				public PartialSum accumulate(PartialSum res, SmallAntiChain function) {
+					//calculate partial sum
+					PartialSum sumP = arithmetic.zero();
+					Scratch s = scratch.get();
+					int[] below = s.below;
+					int found = index.below(function, below);
+					int[] exponents = s.exponents;
+					if(cache == null) {
+						s.graph.setFunction(function);
+						s.graph.exponents(functions, below, found, exponents);
+					} else
+						for (int k = 0; k < found; k++)
+							exponents[k] = cache.exponent(functions.representative(below[k]), function);
+					for (int k = 0; k < found; k++)
+						sumP.addShifted(functions.weight(below[k]), exponents[k]);
+					sumP.multiply(new AntiChainInterval(function, u).latticeSize());
+					res.add(sumP);
+					return res;
+				}
+
+				@Override
+				public PartialSum combine(PartialSum a, PartialSum b) {
+					a.add(b);
+					return a;
+				}
+			};
+			List<AntiChainInterval> parts = new ArrayList<>();
+			for(AntiChainInterval part : AntiChainInterval.fullSpace(dedekind).split())
+				parts.addAll(part.split());
+			PartialSum sum = arithmetic.zero();
+			for(int i = myRank; i < parts.size(); i += nOfProc)
+				sum.add(parts.get(i).reduce(reducer, pool));
+			return sum;
+		}
+		
+		Iterator<SmallAntiChain> it2 = functions.representatives();
+		final ClassTerms terms = new ClassTerms(index, cache);
+		ArrayList<Future<PartialSum>> results = new ArrayList<>();
+		
+		//iterate over one antichain of every class
 		while(it2.hasNext()) {
 			final SmallAntiChain function = it2.next();
 			//check whether this node needs to calculate the result for this antichain
 			if(counter++ == myRank) {
 				//add a new task to the thread pool
-				results.add(pool.submit(new Callable<BigInteger>() {
+				results.add(pool.submit(new Callable<PartialSum>() {
 					@Override
-					public BigInteger call() throws Exception {
-						//calculate partial sum
-						BigInteger sumP = BigInteger.ZERO;
-						for (SmallAntiChain r1:functions.keySet()) {
-							if (r1.le(function)) {
-								sumP = sumP.add(
-										BigInteger.valueOf(functions.get(r1)).multiply(
-											leftIntervalSize.get(r1)).multiply(
-											AntiChainSolver.PatricksCoefficient(r1, function))
-										);
-							}
-						}
-						return sumP.multiply(BigInteger.valueOf(new AntiChainInterval(function, u).latticeSize()));
+					public PartialSum call() throws Exception {
+						PartialSum sumP = arithmetic.zero();
+						terms.addTerms(function, sumP);
+						return sumP;
 					}
 					
 				}));
@@ -153,9 +237,9 @@ public class HybridM {
 		}
 		
 		//collect the results from all threads
-		BigInteger sum = BigInteger.ZERO;
-		for(Future<BigInteger> sumP : results)
-			sum = sum.add(sumP.get());
+		PartialSum sum = arithmetic.zero();
+		for(Future<PartialSum> sumP : results)
+			sum.add(sumP.get());
 		return sum;
 	}
 	
@@ -178,48 +262,25 @@ public class HybridM {
 		timeCPU = doCPUTime("CPU ",timeCPU);
 		
 		//find the equivalence classes in a multithreaded way using the already existing threadpool
-		SortedMap<BigInteger, Long>[] classes = AntiChainSolver.equivalenceClasses(dedekind, pool);		//different levels in hass-dagramm
-		SortedMap<SmallAntiChain, Long> functions = new TreeMap<>();			//number of antichains.hybrid in 1 equivalence-class
+		SortedMap<BigInteger, Long>[] classes = generator.equivalenceClasses(dedekind, pool);		//different levels in hass-dagramm
 
 		timePair = doTime("Generated equivalence classes at ",timePair);
 		timeCPU = doCPUTime("CPU ",timeCPU);
 		
 		// collect
-		for (int i=0;i<classes.length;i++) {
-			long coeff = SmallBasicSet.combinations(dedekind, i);
-			for (BigInteger b : classes[i].keySet()) {
-				Storage.store(functions, SmallAntiChain.decode(b),classes[i].get(b)*coeff);
-			}	
-		}
+		RepresentativeTable functions = new RepresentativeTable(dedekind, classes);			//number of antichains.hybrid in 1 equivalence-class
 		
 		timePair = doTime("Collected equivalence classes at ",timePair);
 		timeCPU = doCPUTime("CPU ",timeCPU);
 		
-		//start computation of the left interval sizes in a multithreaded fashion
-		final SmallAntiChain e = SmallAntiChain.emptyAntiChain();
-		TreeMap<SmallAntiChain, Future<BigInteger>> temp = new TreeMap<>();
-		for (final SmallAntiChain f : functions.keySet()) {
-			temp.put(f, pool.submit(new Callable<BigInteger>() {
-
-				@Override
-				public BigInteger call() throws Exception {
-					return BigInteger.valueOf(new AntiChainInterval(e,f).latticeSize());
-				}
-				
-			}));
-		}
-		
-		//collect the results of all computations
-		SortedMap<SmallAntiChain, BigInteger> leftIntervalSize = new TreeMap<>();
-		for(SmallAntiChain f : temp.keySet()) {
-			leftIntervalSize.put(f, temp.get(f).get());
-		}
+		//compute the left interval sizes in a multithreaded fashion
+		functions.computeLeftIntervalSizes(pool);
 		
 		timePair = doTime("Generated interval sizes",timePair);
 		timeCPU = doCPUTime("CPU ",timeCPU);
 		
 		//broadcast the results of the non-parallel part
-		byte[] bcastbuf = serialize(new SortedMap[]{functions, leftIntervalSize});
+		byte[] bcastbuf = serialize(functions);
 		
 		MPI.COMM_WORLD.bcast(new int[]{bcastbuf.length}, 1, MPI.INT, 0);
 		MPI.COMM_WORLD.bcast(bcastbuf, bcastbuf.length, MPI.BYTE, 0);
@@ -227,19 +288,33 @@ public class HybridM {
 		timePair = doTime("Broadcast completed", timePair);
 		timeCPU = doCPUTime("CPU", timeCPU);
 		
-		//perform part of the job
-		BigInteger sum = doThreading(functions, leftIntervalSize);
+		//perform part of the job, for verification both ways
+		PartialSum sum = doThreading(functions, loop == Loop.CLASSES);
+		PartialSum classSum = loop == Loop.VERIFY ? doThreading(functions, true) : null;
 		
 		timePair = doTime(String.format("Proces %d calculated %s", myRank, sum), timePair);
 		timeCPU = doCPUTime("Finishing", timeCPU);
+		if(cache != null)
+			System.out.println(String.format("Proces %d coefficient cache %s", myRank, cache));
 		
 		//collect the results of all nodes
 		for(int i = 1; i < this.nOfProc; i++) {
 			int[] intbuf = new int[1];
 			MPI.COMM_WORLD.recv(intbuf, 1, MPI.INT, i, NUMTAG);
-			byte[] bigbuf = new byte[intbuf[0]];
-			MPI.COMM_WORLD.recv(bigbuf, bigbuf.length, MPI.BYTE, i, MPI.ANY_TAG);
-			sum = sum.add(new BigInteger(bigbuf));
+			long[] sumbuf = new long[intbuf[0]];
+			MPI.COMM_WORLD.recv(sumbuf, sumbuf.length, MPI.LONG, i, MPI.ANY_TAG);
+			sum.add(arithmetic.fromLongArray(sumbuf));
+			if(classSum != null) {
+				MPI.COMM_WORLD.recv(intbuf, 1, MPI.INT, i, NUMTAG);
+				sumbuf = new long[intbuf[0]];
+				MPI.COMM_WORLD.recv(sumbuf, sumbuf.length, MPI.LONG, i, MPI.ANY_TAG);
+				classSum.add(arithmetic.fromLongArray(sumbuf));
+			}
+		}
+		if(classSum != null) {
+			if(!classSum.toBigInteger().equals(sum.toBigInteger()))
+				throw new IllegalStateException("The loop over the classes gives " + classSum + " instead of " + sum);
+			System.out.println("Verified the loop over the classes against the loop over the functions");
 		}
 		
 		//output the result and how much time has been spent
@@ -354,6 +429,20 @@ public class HybridM {
 	        bean.getCurrentThreadCpuTime( ) : 0L;
 	}
 	
+	/**
+	 * The arrays and the graph used for the terms of one function, one set per thread
+	 */
+	private static class Scratch {
+		private final int[] below;
+		private final int[] exponents;
+		private final PatricksGraph graph = new PatricksGraph();
+		
+		private Scratch(int size) {
+			below = new int[size];
+			exponents = new int[size];
+		}
+	}
+	
 	/************************************************************
 	 * Main														*
 	 ************************************************************/
@@ -373,7 +462,14 @@ public class HybridM {
 		int myRank = MPI.COMM_WORLD.getRank();
 		int nOfProc = MPI.COMM_WORLD.getSize();
 		
-		HybridM node = new HybridM(Integer.parseInt(args[0]), nOfProc, myRank);
+		//arguments: dedekind [cache capacity] [-classes | -verify] [-orderly] [-crt] [-standardcache]
+		String[] positional = Loop.positional(args);
+		PatricksCache cache = null;
+		if(positional.length > 1)
+			cache = new PatricksCache(Integer.parseInt(positional[1]));
+		Options options = Options.of(args);
+		options.enableCaches();
+		HybridM node = new HybridM(Integer.parseInt(positional[0]), nOfProc, myRank, cache, options);
 		
 		if(myRank == 0)
 			node.doItThoroughly();
@@ -10,16 +10,24 @@ import java.lang.management.ThreadMXBean;
 import java.math.BigInteger;
 import java.util.Iterator;
 import java.util.SortedMap;
-import java.util.TreeMap;
 
 import mpi.MPI;
 import mpi.MPIException;
 import mpi.Status;
+import amfsmall.AntiChainBlocks;
 import amfsmall.AntiChainInterval;
-import amfsmall.AntiChainSolver;
+import amfsmall.AntiChainSolver.Generator;
+import amfsmall.ClassTerms;
+import amfsmall.ClassTerms.Loop;
+import amfsmall.DownSetIndex;
+import amfsmall.PatricksGraph;
+import amfsmall.RepresentativeTable;
 import amfsmall.SmallAntiChain;
 import amfsmall.SmallBasicSet;
-import amfsmall.Storage;
+import antichains.Options;
+import auxiliary.Arithmetic;
+import auxiliary.PartialSum;
+import auxiliary.WideSum;
 
 /**
  * A class that allows to calculate the nth Dedekind number over MPI.
@@ -34,14 +42,28 @@ public class MpiM {
 	public static final int DIETAG = 7;
 	/** Tag to indicate the length of an object is being sent */
 	public static final int NUMTAG = 1;
+	/** Tag to indicate an antichain stands for its class, or the result is that of a class */
+	public static final int CLASSTAG = 2;
+	/** Tag to indicate a block of codes of antichains, or the result is that of a block */
+	public static final int BLOCKTAG = 3;
+	/** The number of antichains in a block */
+	public static final int BLOCK = 64;
 	
 	private final int dedekind;
 	private final int nOfProc;
+	private final Loop loop;
+	private final Generator generator;
+	private final Arithmetic arithmetic;
+	
+	//the outer loop: the functions that are sent in blocks with BLOCKTAG, then the representatives with CLASSTAG
+	private AntiChainBlocks blocks;
+	private Iterator<SmallAntiChain> representatives;
+	private int resultTag;
 
 	//buffers
 	private int[] num = new int[1];
 	private long[] acbuf = new long[2];			//estimated size
-	private byte[] bigintbuf = new byte[2];		//estimated size
+	private long[] sumbuf = new long[WideSum.WORDS];
 	private long[] timebuf = new long[2];
 	
 	/**
@@ -53,6 +75,20 @@ public class MpiM {
 	 * 			The number of processors available.
 	 */
 	public MpiM(int n, int nOfProc) {
+		this(n, nOfProc, Options.DEFAULT);
+	}
+	
+	/**
+	 * Initialise every node with its buffers and set the parameters.
+	 * 
+	 * @param 	n
+	 * 			The dedekind to calculate
+	 * @param 	nOfProc
+	 * 			The number of processors available.
+	 * @param	options
+	 * 			The outer loop, the generator of the equivalence classes and the representation of the sums.
+	 */
+	public MpiM(int n, int nOfProc, Options options) {
 		if(n < 2) {
 			System.out.println("For 0, the dedekind number is:\t2\nFor 1, the dedekind number is:\t3\n");
 			throw new IllegalArgumentException("Enter a number greater or equal to 2\n");
@@ -60,6 +96,9 @@ public class MpiM {
 		
 		this.dedekind = n - 2;
 		this.nOfProc = nOfProc;
+		this.loop = options.loop;
+		this.generator = options.generator;
+		this.arithmetic = options.arithmetic;
 	}
 	
 	/**
@@ -69,7 +108,8 @@ public class MpiM {
 	 * @throws MPIException if something went wrong with the MPI-routines.
 	 */
 	private void delegate() throws MPIException {
-		BigInteger sum = BigInteger.ZERO;
+		PartialSum sum = arithmetic.zero();
+		PartialSum classSum = arithmetic.zero();
 		
 		long startTime = System.currentTimeMillis();
 		long cpuTime = getCpuTime();
@@ -81,35 +121,25 @@ public class MpiM {
 		timeCPU = doCPUTime("CPU ",timeCPU);
 		
 		//find equivalence classes
-		SortedMap<BigInteger, Long>[] classes = AntiChainSolver.equivalenceClasses(dedekind);		//different levels in hass-dagramm
-		SortedMap<SmallAntiChain, Long> functions = new TreeMap<SmallAntiChain, Long>();			//number of antichains.hybrid in 1 equivalence-class
+		SortedMap<BigInteger, Long>[] classes = generator.equivalenceClasses(dedekind);		//different levels in hass-dagramm
 
 		timePair = doTime("Generated equivalence classes at",timePair);
 		timeCPU = doCPUTime("CPU ",timeCPU);
 		
 		// collect
-		for (int i=0;i<classes.length;i++) {
-			long coeff = SmallBasicSet.combinations(dedekind, i);
-			for (BigInteger b : classes[i].keySet()) {
-				Storage.store(functions, SmallAntiChain.decode(b),classes[i].get(b)*coeff);
-			}	
-		}
+		RepresentativeTable functions = new RepresentativeTable(dedekind, classes);			//number of antichains.hybrid in 1 equivalence-class
 		
 		timePair = doTime("Collected equivalence classes at",timePair);
 		timeCPU = doCPUTime("CPU ",timeCPU);
 		
 		//compute interval sizes
-		final SmallAntiChain e = SmallAntiChain.emptyAntiChain();
-		SortedMap<SmallAntiChain, BigInteger> leftIntervalSize = new TreeMap<>();
-		for (final SmallAntiChain f : functions.keySet()) {
-			leftIntervalSize.put(f, BigInteger.valueOf(new AntiChainInterval(e,f).latticeSize()));
-		}
+		functions.computeLeftIntervalSizes();
 		
 		timePair = doTime("Generated interval sizes",timePair);
 		timeCPU = doCPUTime("CPU ",timeCPU);
 
 		//serialize and broadcast results from non-parallel part
-		byte[] bcastbuf = serialize(new SortedMap[]{functions, leftIntervalSize});
+		byte[] bcastbuf = serialize(functions);
 		
 		MPI.COMM_WORLD.bcast(new int[]{bcastbuf.length}, 1, MPI.INT, 0);
 		MPI.COMM_WORLD.bcast(bcastbuf, bcastbuf.length, MPI.BYTE, 0);
@@ -122,15 +152,16 @@ public class MpiM {
 		long evaluations = 0;
 		long newEvaluations = 0;
 		long time = 0;
-		Iterator<SmallAntiChain> it2 = AntiChainInterval.fullSpace(dedekind).fastIterator();
+		if(loop != Loop.CLASSES)
+			blocks = AntiChainInterval.fullSpace(dedekind).blocks();
+		if(loop != Loop.FUNCTIONS)
+			representatives = functions.representatives();
 		
 		//send a first piece of work to every node
 		int x = 0;
 		for(int i = 1; i < nOfProc; i++) {
-			if(it2.hasNext()) {
-				acbuf = it2.next().toLongArray();
-				MPI.COMM_WORLD.send(new int[]{acbuf.length}, 1, MPI.INT, i, NUMTAG);
-				MPI.COMM_WORLD.send(acbuf, acbuf.length, MPI.LONG, i, 0);
+			if(hasWork()) {
+				sendWork(i);
 				x = i;
 			} else {
 				MPI.COMM_WORLD.send(null, 0, MPI.INT, i, NUMTAG);
@@ -144,12 +175,10 @@ public class MpiM {
 		//distribute work as long as there is work
 		//collect the results calculated thus far
 		int src;
-		while(it2.hasNext()) {
+		while(hasWork()) {
 			src = retrieveResults();
-			acbuf = it2.next().toLongArray();
-			MPI.COMM_WORLD.send(new int[]{acbuf.length}, 1, MPI.INT, src, NUMTAG);
-			MPI.COMM_WORLD.send(acbuf, acbuf.length, MPI.LONG, src, 0);
-			sum = sum.add(new BigInteger(bigintbuf));
+			sendWork(src);
+			(resultTag == CLASSTAG ? classSum : sum).add(arithmetic.fromLongArray(sumbuf));
 			newEvaluations += timebuf[0];
 			time += timebuf[1];
 			
@@ -174,11 +203,19 @@ public class MpiM {
 			src = retrieveResults();
 			MPI.COMM_WORLD.send(null, 0, MPI.INT, src, NUMTAG);
 			MPI.COMM_WORLD.send(null, 0, MPI.LONG, src, DIETAG);
-			sum = sum.add(new BigInteger(bigintbuf));
+			(resultTag == CLASSTAG ? classSum : sum).add(arithmetic.fromLongArray(sumbuf));
 			evaluations += timebuf[0];
 			time += timebuf[1];
 		}
 		
+		if(loop == Loop.VERIFY) {
+			if(!classSum.toBigInteger().equals(sum.toBigInteger()))
+				throw new IllegalStateException("The loop over the classes gives " + classSum + " instead of " + sum);
+			System.out.println("Verified the loop over the classes against the loop over the functions");
+		}
+		if(loop == Loop.CLASSES)
+			sum = classSum;
+		
 		//output result and running time
 		System.out.println("\n" + sum);
 		timePair = doTime("Finished ",timePair);
@@ -195,7 +232,6 @@ public class MpiM {
 	 * 
 	 * @throws MPIException if something went wrong with the MPI-routines
 	 */
-	@SuppressWarnings("unchecked")
 	private void work() throws MPIException {
 		SmallAntiChain u = SmallAntiChain.oneSetAntiChain(SmallBasicSet.universe(dedekind));
 		SmallAntiChain function;
@@ -205,10 +241,12 @@ public class MpiM {
 		byte[] bcastbuf = new byte[num[0]];
 		MPI.COMM_WORLD.bcast(bcastbuf, bcastbuf.length, MPI.BYTE, 0);
 		
-		SortedMap<SmallAntiChain, ?>[] obj = (SortedMap[]) deserialize(bcastbuf);
-
-		SortedMap<SmallAntiChain, Long> functions = (SortedMap<SmallAntiChain, Long>) obj[0];
-		SortedMap<SmallAntiChain, BigInteger> leftIntervalSize = (SortedMap<SmallAntiChain, BigInteger>) obj[1];
+		RepresentativeTable functions = (RepresentativeTable) deserialize(bcastbuf);
+		DownSetIndex index = new DownSetIndex(functions);
+		ClassTerms terms = new ClassTerms(index, null);
+		int[] below = new int[functions.size()];
+		int[] exponents = new int[functions.size()];
+		int words = AntiChainBlocks.words(dedekind);
 		
 		//keep waiting for work
 		long time, evaluations;
@@ -224,25 +262,28 @@ public class MpiM {
 				break;
 			
 			//compute partial sum
-			function = new SmallAntiChain(acbuf);
 			time = getCpuTime();
 			evaluations = 0;
-			BigInteger sumP = BigInteger.ZERO;
-			for (SmallAntiChain r1:functions.keySet()) {
-				if (r1.le(function)) {
-					sumP = sumP.add(
-							BigInteger.valueOf(functions.get(r1)).multiply(
-								leftIntervalSize.get(r1)).multiply(
-								AntiChainSolver.PatricksCoefficient(r1, function))
-							);
+			PartialSum sumP = arithmetic.zero();
+			if(stat.getTag() == CLASSTAG)
+				evaluations = terms.addTerms(new SmallAntiChain(acbuf), sumP);
+			else for(int offset = 0; offset < num[0]; offset += words) {
+				function = AntiChainBlocks.decode(acbuf, offset, words);
+				PartialSum term = arithmetic.zero();
+				int found = index.below(function, below);
+				new PatricksGraph(function).exponents(functions, below, found, exponents);
+				for (int k = 0; k < found; k++) {
+					term.addShifted(functions.weight(below[k]), exponents[k]);
 					evaluations++;
 				}
+				term.multiply(new AntiChainInterval(function, u).latticeSize());
+				sumP.add(term);
 			}
-			bigintbuf = sumP.multiply(BigInteger.valueOf(new AntiChainInterval(function, u).latticeSize())).toByteArray();
+			sumbuf = sumP.toLongArray();
 			
-			//send the result back to the master
-			MPI.COMM_WORLD.send(new int[]{bigintbuf.length}, 1, MPI.INT, 0, NUMTAG);
-			MPI.COMM_WORLD.send(bigintbuf, bigintbuf.length, MPI.BYTE, 0, 0);
+			//send the words of the result back to the master, with the tag of the work
+			MPI.COMM_WORLD.send(new int[]{sumbuf.length}, 1, MPI.INT, 0, NUMTAG);
+			MPI.COMM_WORLD.send(sumbuf, sumbuf.length, MPI.LONG, 0, stat.getTag());
 			//send how long this node has worked on this partial sum
 			timebuf[0] = evaluations;
 			timebuf[1] = getCpuTime() - time;
@@ -250,17 +291,52 @@ public class MpiM {
 		}
 	}
 
+	/**
+	 * Check whether the outer loop has more work, 
+	 * the loop over the classes follows when all functions have been sent.
+	 * 
+	 * @return	true iff there is an antichain left to send.
+	 */
+	private boolean hasWork() {
+		return blocks != null && blocks.hasNext() || representatives != null && representatives.hasNext();
+	}
+	
+	/**
+	 * Send the next piece of work of the outer loop to a worker:
+	 * a block of at most BLOCK functions, or a representative when all functions have been sent.
+	 * 
+	 * @param	dest
+	 * 			The rank of the worker.
+	 * @throws 	MPIException if something went wrong with the MPI-routines.
+	 */
+	private void sendWork(int dest) throws MPIException {
+		int length, tag;
+		if(blocks != null && blocks.hasNext()) {
+			if(acbuf.length < BLOCK * blocks.getWords())
+				acbuf = new long[BLOCK * blocks.getWords()];
+			length = blocks.next(acbuf, 0, BLOCK) * blocks.getWords();
+			tag = BLOCKTAG;
+		} else {
+			acbuf = representatives.next().toLongArray();
+			length = acbuf.length;
+			tag = CLASSTAG;
+		}
+		MPI.COMM_WORLD.send(new int[]{length}, 1, MPI.INT, dest, NUMTAG);
+		MPI.COMM_WORLD.send(acbuf, length, MPI.LONG, dest, tag);
+	}
+	
 	/**
 	 * Retrieve results sent from the workers.
+	 * The tag of the result is kept in resultTag.
 	 * 
 	 * @return	an integer representing the rank of the node that sent the results.
 	 * @throws 	MPIException if something went wrong with the MPI-routines.
 	 */
 	private int retrieveResults() throws MPIException {
 		Status stat = MPI.COMM_WORLD.recv(num, 1, MPI.INT, MPI.ANY_SOURCE, NUMTAG);
-		if(num[0] != bigintbuf.length)
-			bigintbuf = new byte[num[0]];
-		MPI.COMM_WORLD.recv(bigintbuf, bigintbuf.length, MPI.BYTE, stat.getSource(), 0);
+		if(num[0] != sumbuf.length)
+			sumbuf = new long[num[0]];
+		resultTag = MPI.COMM_WORLD.recv(sumbuf, sumbuf.length, MPI.LONG, stat.getSource(), MPI.ANY_TAG).getTag();
 		MPI.COMM_WORLD.recv(timebuf, 2, MPI.LONG, stat.getSource(), 0);
 		return stat.getSource();
 	}
@@ -379,6 +455,9 @@ public class MpiM {
 	 * the work method otherwise. Finalize MPI on this node after the method returns.
 	 * 
 	 * @param args0 The Dedekind number to calculate
+	 * @param args1 Optionally -classes to loop over one function per class, -verify to loop both ways and compare,
+	 * 				-orderly to generate the classes by canonical augmentation, -crt to keep the sums as residues,
+	 * 				-standardcache to keep the standard forms of the antichains
 	 * @throws MPIException if something went wrong with the MPI-routines
 	 */
 	public static void main(String[] args) throws MPIException {
@@ -387,7 +466,9 @@ public class MpiM {
 		int myRank = MPI.COMM_WORLD.getRank();
 		int nOfProc = MPI.COMM_WORLD.getSize();
 		
-		MpiM node = new MpiM(Integer.parseInt(args[0]), nOfProc);
+		Options options = Options.of(args);
+		options.enableCaches();
+		MpiM node = new MpiM(Integer.parseInt(Loop.positional(args)[0]), nOfProc, options);
 		
 		if(myRank == 0)
 			node.delegate();
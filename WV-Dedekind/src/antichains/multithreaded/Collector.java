@@ -2,6 +2,9 @@ package antichains.multithreaded;
 // deprecated, use acmat/Collector<BigInteger,BigInteger>
 import java.math.BigInteger;
 
+import auxiliary.Arithmetic;
+import auxiliary.PartialSum;
+
 /**
  * manages a number of threads
  * @author u0003471
@@ -12,14 +15,24 @@ public class Collector {
 	
 	private int numberOfProcesses;
 	private int numberOfAllowedProcesses;
-	private BigInteger result;
+	private PartialSum result;
 	private long iterations;
 	private long time;
 
 	public Collector(int n) {
+		this(n, Arithmetic.WIDE);
+	}
+	
+	/**
+	 * @param 	n
+	 * 			the number of threads allowed at once
+	 * @param 	arithmetic
+	 * 			the representation of the result
+	 */
+	public Collector(int n, Arithmetic arithmetic) {
 		numberOfAllowedProcesses = n;
 		numberOfProcesses = 0;
-		result = BigInteger.ZERO;
+		result = arithmetic.zero();
 		iterations = 0;
 		time = 0;
 	}
@@ -35,7 +48,13 @@ public class Collector {
 	}
 	
 	synchronized public void register(BigInteger v, long its, long sec) {
-		result = result.add(v);
+		result.add(v);
+		iterations += its;
+		time += sec;
+	}
+	
+	synchronized public void register(PartialSum v, long its, long sec) {
+		result.add(v);
 		iterations += its;
 		time += sec;
 	}
@@ -45,8 +64,15 @@ public class Collector {
 		return true;
 	}
 	
+	/**
+	 * @return	a sum with value 0 in the representation of the result, for a thread to accumulate its terms
+	 */
+	public synchronized PartialSum newSum() {
+		return result.zero();
+	}
+	
 	public synchronized BigInteger getResult() {
-		return result;
+		return result.toBigInteger();
 	}
 	
 	synchronized public long iterations() {
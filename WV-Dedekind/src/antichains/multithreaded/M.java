@@ -5,16 +5,23 @@ import java.io.PrintStream;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
 import java.math.BigInteger;
-import java.util.Iterator;
 import java.util.SortedMap;
-import java.util.TreeMap;
 
 import amfsmall.AntiChainInterval;
+import amfsmall.ClassTerms;
+import amfsmall.ClassTerms.Loop;
+import amfsmall.DownSetIndex;
+import amfsmall.IntervalCursor;
+import amfsmall.PatricksCache;
+import amfsmall.RepresentativeTable;
 import amfsmall.SmallAntiChain;
 import amfsmall.AntiChainSolver;
+import amfsmall.AntiChainSolver.Generator;
 import amfsmall.SmallBasicSet;
-import amfsmall.Storage;
+import amfsmall.StandardCache;
 import amfsmall.SyntaxErrorException;
+import antichains.Options;
+import auxiliary.Arithmetic;
 
 /**
  * class for the computation of a Dedekind number
@@ -27,12 +34,34 @@ public class M {
 
 	public final int cores;
 
+	public final PatricksCache cache;
+
+	public final Loop loop;
+
+	public final Generator generator;
+
+	public final Arithmetic arithmetic;
+
 	static private SmallBasicSet[] N;
 	static private SmallAntiChain[] fN;
 	static private AntiChainInterval[] iS;
 	
 	public M(int n, int coresUsed) throws SyntaxErrorException {
+		this(n, coresUsed, null, Options.DEFAULT);
+	}
+	
+	/**
+	 * @param 	pc
+	 * 			the cache for the coefficients of Patrick, null to compute them per function in a batch
+	 * @param 	options
+	 * 			the outer loop, the generator of the equivalence classes and the representation of the sums
+	 */
+	public M(int n, int coresUsed, PatricksCache pc, Options options) throws SyntaxErrorException {
 		dedekind = n;
+		cache = pc;
+		loop = options.loop;
+		generator = options.generator;
+		arithmetic = options.arithmetic;
 		
 		N = new SmallBasicSet[n];
 		fN = new SmallAntiChain[n];
@@ -75,25 +104,20 @@ public class M {
 		int n = dedekind - 2;
 		int reportRate = 10;
 		
-		SortedMap<BigInteger, Long>[] classes = AntiChainSolver.equivalenceClasses(n);	//different levels in hass-dagramm
-		SortedMap<SmallAntiChain, Long> functions = new TreeMap<SmallAntiChain, Long>();			//number of antichains.hybrid in 1 equivalence-class
+		SortedMap<BigInteger, Long>[] classes = generator.equivalenceClasses(n);	//different levels in hass-dagramm
 
 		timePair = doTime("Generated equivalence classes at ",timePair);
 		timeCPU = doCPUTime("CPU ",timeCPU);
+		if (StandardCache.isEnabled())
+			System.out.println(String.format("%30s %15s","Standard form cache ",StandardCache.statistics()));
 
+		// collect
+		RepresentativeTable functions = new RepresentativeTable(n, classes);			//number of antichains.hybrid in 1 equivalence-class
 		PrintStream ps;
 		try {
 			ps = new PrintStream("EquivalenceClasses" + n);
-
-			// collect
-			for (int i=0;i<classes.length;i++) {
-				long coeff = SmallBasicSet.combinations(n, i);
-				for (BigInteger b : classes[i].keySet()) {
-					Storage.store(functions, SmallAntiChain.decode(b),classes[i].get(b)*coeff);
-					ps.println(SmallAntiChain.decode(b) + "," + classes[i].get(b)*coeff);
-				}	
-			}
-
+			for (int i=0;i<functions.size();i++)
+				ps.println(functions.representative(i) + "," + functions.multiplicity(i));
 			ps.close();
 		} catch (FileNotFoundException e1) {
 			e1.printStackTrace();
@@ -104,10 +128,8 @@ public class M {
 		
 		SmallAntiChain e = SmallAntiChain.emptyAntiChain();
 		SmallAntiChain u = SmallAntiChain.oneSetAntiChain(SmallBasicSet.universe(n));
-		SortedMap<SmallAntiChain, BigInteger> leftIntervalSize = new TreeMap<SmallAntiChain, BigInteger>();
-		for (SmallAntiChain f : functions.keySet()) {
-			leftIntervalSize.put(f, BigInteger.valueOf(new AntiChainInterval(e,f).latticeSize()));
-		}
+		functions.computeLeftIntervalSizes();
+		DownSetIndex index = new DownSetIndex(functions);
 		
 		timePair = doTime("Generated interval sizes",timePair);
 		timeCPU = doCPUTime("CPU ",timeCPU);
@@ -115,14 +137,15 @@ public class M {
 		// test
 		long evaluations = 0;
 		long newEvaluations = 0;
-		Iterator<SmallAntiChain> it2 = new AntiChainInterval(e,u).fastIterator();
+		// PCThread copies the function, so the antichain of the cursor is reused
+		IntervalCursor it2 = new AntiChainInterval(e,u).cursor();
 		
 		//TODO: ThreadPools might be useful to increase speed of parallelization.
-		Collector collector = new Collector(cores);
+		Collector collector = new Collector(cores, arithmetic);
 
-		while (it2.hasNext()) {
-			SmallAntiChain r2 = it2.next();
-			new PCThread(r2, functions, leftIntervalSize, u, collector).start();
+		while (loop != Loop.CLASSES && it2.advance()) {
+			SmallAntiChain r2 = it2.current();
+			new PCThread(r2, index, u, cache, collector).start();
 			newEvaluations += collector.iterations();
 			if (newEvaluations > reportRate) {
 				evaluations += newEvaluations;
@@ -137,12 +160,32 @@ public class M {
 
 		evaluations += newEvaluations;
 		
+		if (loop != Loop.FUNCTIONS) {
+			// one function per class, after the threads of the loop over the functions have finished
+			Collector functionCollector = collector;
+			functionCollector.isReady();
+			collector = new Collector(cores, arithmetic);
+			ClassTerms terms = new ClassTerms(index, cache);
+			for (int i = 0; i < functions.size(); i++)
+				new PCThread(functions.representative(i), terms, collector).start();
+			collector.isReady();
+			if (loop == Loop.VERIFY) {
+				if (!functionCollector.getResult().equals(collector.getResult()))
+					throw new IllegalStateException("The loop over the classes gives " + collector.getResult() 
+							+ " instead of " + functionCollector.getResult());
+				System.out.println("Verified the loop over the classes against the loop over the functions");
+			}
+			evaluations = collector.iterations();
+		}
+		
 		timePair = doTime(String.format("%d evs\n%s val, %d processes ",evaluations, collector.getResult(), collector.numberOfProcesses()),timePair);
 		timeCPU = doCPUTime("Finishing ",timeCPU);
 		if (collector.isReady()) System.out.println(collector.getResult());
 		timePair = doTime("Finished",timePair);
 		timeCPU = doCPUTime("CPU ",timeCPU);
 		System.out.println(String.format("%30s %15d ns","Total thread time ",collector.time()));
+		if (cache != null)
+			System.out.println(String.format("%30s %15s","Coefficient cache ",cache));
 
 		System.out.println(String.format("%30s %15d ns","Total cpu time used ",collector.time() + getCpuTime()));
 		System.out.println(String.format("%30s %15d ms","Total time elapsed ",System.currentTimeMillis() - startTime));
@@ -169,8 +212,17 @@ public class M {
 	}
 
 
-	public static void main(String[] args) throws NumberFormatException, SyntaxErrorException, InterruptedException {
-		new M(Integer.parseInt(args[0]), Integer.parseInt(args[1])).doIt();
+	/**
+	 * arguments: dedekind cores [cache capacity] [-classes | -verify] [-orderly] [-crt] [-standardcache]
+	 */
+	public static void main(String[] options) throws NumberFormatException, SyntaxErrorException, InterruptedException {
+		String[] args = Loop.positional(options);
+		PatricksCache cache = null;
+		if (args.length > 2)
+			cache = new PatricksCache(Integer.parseInt(args[2]));
+		Options o = Options.of(options);
+		o.enableCaches();
+		new M(Integer.parseInt(args[0]), Integer.parseInt(args[1]), cache, o).doIt();
 	}
 
 }
@@ -2,26 +2,43 @@ package antichains.multithreaded;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
-import java.math.BigInteger;
-import java.util.SortedMap;
-
 import amfsmall.AntiChainInterval;
+import amfsmall.ClassTerms;
+import amfsmall.DownSetIndex;
+import amfsmall.PatricksCache;
+import amfsmall.PatricksGraph;
+import amfsmall.RepresentativeTable;
 import amfsmall.SmallAntiChain;
-import amfsmall.AntiChainSolver;
+import auxiliary.PartialSum;
 
 public class PCThread extends Thread {
 
 	private SmallAntiChain function;
 	private SmallAntiChain upper;
-	private SortedMap<SmallAntiChain, Long> functions;
-	private SortedMap<SmallAntiChain, BigInteger> leftIntervalSize;
+	private DownSetIndex index;
+	private PatricksCache cache;
 	private Collector collector;
+	private ClassTerms terms;
+
+	public PCThread(SmallAntiChain r2, DownSetIndex ix, SmallAntiChain u, Collector cr) throws InterruptedException {
+		this(r2, ix, u, null, cr);
+	}
 
-	public PCThread(SmallAntiChain r2, SortedMap<SmallAntiChain, Long> fs, SortedMap<SmallAntiChain, BigInteger> ls, SmallAntiChain u, Collector cr) throws InterruptedException {
+	public PCThread(SmallAntiChain r2, DownSetIndex ix, SmallAntiChain u, PatricksCache pc, Collector cr) throws InterruptedException {
 		function = new SmallAntiChain(r2);
-		functions = fs;
-		leftIntervalSize = ls;
+		index = ix;
 		this.upper = u;
+		cache = pc;
+		collector = cr;
+		collector.enter();
+	}
+
+	/**
+	 * Compute the terms of all functions in the class of r2
+	 */
+	public PCThread(SmallAntiChain r2, ClassTerms ct, Collector cr) throws InterruptedException {
+		function = new SmallAntiChain(r2);
+		terms = ct;
 		collector = cr;
 		collector.enter();
 	}
@@ -29,20 +46,29 @@ public class PCThread extends Thread {
 	@Override
 	public void run() {
 		long time = getCpuTime();
-		BigInteger sumP = BigInteger.ZERO;
+		PartialSum sumP = collector.newSum();
 		long evaluations = 0;
-		for (SmallAntiChain r1:functions.keySet()) {
-			if (r1.le(function)) {
-				sumP = sumP.add(
-						BigInteger.valueOf(functions.get(r1)).multiply(
-							leftIntervalSize.get(r1)).multiply(
-							AntiChainSolver.PatricksCoefficient(r1, function))
-						);
-				evaluations++;
-
-			}
+		if (terms != null) {
+			evaluations = terms.addTerms(function, sumP);
+			collector.register(sumP, evaluations, getCpuTime() - time);
+			collector.leave();
+			return;
+		}
+		RepresentativeTable functions = index.getTable();
+		int[] below = new int[functions.size()];
+		int found = index.below(function, below);
+		int[] exponents = new int[found];
+		if (cache == null)
+			new PatricksGraph(function).exponents(functions, below, found, exponents);
+		else
+			for (int k = 0; k < found; k++)
+				exponents[k] = cache.exponent(functions.representative(below[k]), function);
+		for (int k = 0; k < found; k++) {
+			sumP.addShifted(functions.weight(below[k]), exponents[k]);
+			evaluations++;
 		}
-		collector.register(sumP.multiply(BigInteger.valueOf(new AntiChainInterval(function,upper).latticeSize())), evaluations, getCpuTime() - time);
+		sumP.multiply(new AntiChainInterval(function,upper).latticeSize());
+		collector.register(sumP, evaluations, getCpuTime() - time);
 		collector.leave();
 	}
 	
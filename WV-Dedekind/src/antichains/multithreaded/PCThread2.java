@@ -8,6 +8,7 @@ import java.util.SortedMap;
 
 import amfsmall.SmallAntiChain;
 import amfsmall.AntiChainInterval;
+import auxiliary.PartialSum;
 
 /**
  * A failed attempt to implement the new formula.
@@ -36,7 +37,7 @@ public class PCThread2 extends Thread {
 	@Override
 	public void run() {
 		long time = getCpuTime();
-		BigInteger sumP = BigInteger.ZERO;
+		PartialSum sumP = collector.newSum();
 		BigInteger term;
 		long evaluations = 0;
 		SmallAntiChain meet, join;
@@ -53,14 +54,14 @@ public class PCThread2 extends Thread {
 										intervalSizes.get(new AntiChainInterval((SmallAntiChain) r1.join(r3), function))).multiply(
 										intervalSizes.get(new AntiChainInterval((SmallAntiChain) r2.join(r3), function)));
 								if(r3.lt(r2) && r2.lt(r1)) {
-									sumP = sumP.add(term.multiply(COEFF6));
+									sumP.add(term.multiply(COEFF6));
 								} else if((r2.lt(r1) && !r3.le(r2) && !r3.le(r1)) || (r3.lt(r1) && !r3.le(r2) && !r2.le(r1)) || 
 										(r3.lt(r2) && !r2.le(r1) && !r3.le(r1))) {
-									sumP = sumP.add(term.multiply(COEFF2));
+									sumP.add(term.multiply(COEFF2));
 								} else if((!r1.lt(r2) && r3.lt(r2)) || (!r2.lt(r3) && r2.lt(r1)) || (!r3.lt(r1) && r3.lt(r2))){
-									sumP = sumP.add(term.multiply(COEFF3));
+									sumP.add(term.multiply(COEFF3));
 								} else {
-									sumP = sumP.add(term);
+									sumP.add(term);
 								}
 								evaluations++;
 							}
@@ -0,0 +1,38 @@
+package auxiliary;
+
+/**
+ * The representations of a {@link PartialSum} the drivers can choose from
+ */
+public enum Arithmetic {
+	/** a 192-bit integer that continues as a BigInteger, {@link WideSum} */
+	WIDE,
+	/** residues modulo five primes, {@link ModularSum} */
+	CRT;
+
+	/**
+	 * @return	a new sum with value 0 in this representation
+	 */
+	public PartialSum zero() {
+		return this == CRT ? new ModularSum() : new WideSum();
+	}
+
+	/**
+	 * @param 	words
+	 * 			the words of a sum in this representation, as returned by {@link PartialSum#toLongArray()}
+	 * @return	the sum with these words
+	 */
+	public PartialSum fromLongArray(long[] words) {
+		return this == CRT ? new ModularSum(words) : new WideSum(words);
+	}
+
+	/**
+	 * @param 	args
+	 * 			the arguments of a driver
+	 * @return	CRT for an option -crt, WIDE otherwise
+	 */
+	public static Arithmetic of(String[] args) {
+		for (String a : args)
+			if (a.equals("-crt")) return CRT;
+		return WIDE;
+	}
+}
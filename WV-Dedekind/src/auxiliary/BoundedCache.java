@@ -0,0 +1,141 @@
+package auxiliary;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A map of bounded size for caching values that are expensive to compute.
+ * The keys are spread over a number of segments, each segment is locked separately
+ * and evicts its least recently used entry when it is full.
+ * The number of hits and misses is counted to judge whether the cache pays off.
+ * thread safe
+ *
+ * @param <K>	the type of the keys, with equals and hashCode
+ * @param <V>	the type of the values
+ */
+public class BoundedCache<K, V> {
+
+	private static final int SEGMENTS = 16;
+
+	private final Segment<K, V>[] segments;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Create an empty cache
+	 *
+	 * @param 	capacity
+	 * 			the maximal number of entries, positive
+	 */
+	@SuppressWarnings("unchecked")
+	public BoundedCache(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("The capacity should be positive");
+		int n = Math.min(SEGMENTS, capacity);
+		segments = (Segment<K, V>[]) new Segment<?, ?>[n];
+		for (int s = 0; s < n; s++)
+			segments[s] = new Segment<K, V>(capacity / n + (s < capacity % n ? 1 : 0));
+	}
+
+	/**
+	 * Look up a key
+	 *
+	 * @param 	key
+	 * 			the key
+	 * @return	the value stored for key, null if there is none
+	 */
+	public V get(K key) {
+		Segment<K, V> segment = segmentFor(key);
+		V res;
+		synchronized (segment) {
+			res = segment.get(key);
+		}
+		(res == null ? misses : hits).incrementAndGet();
+		return res;
+	}
+
+	/**
+	 * Store a value, evicting the least recently used entry of its segment if needed
+	 *
+	 * @param 	key
+	 * 			the key
+	 * @param 	value
+	 * 			the value, not null
+	 */
+	public void put(K key, V value) {
+		if (value == null)
+			throw new IllegalArgumentException("Cannot store null");
+		Segment<K, V> segment = segmentFor(key);
+		synchronized (segment) {
+			segment.put(key, value);
+		}
+	}
+
+	/**
+	 * @return	the number of entries in this cache
+	 */
+	public int size() {
+		int res = 0;
+		for (Segment<K, V> segment : segments)
+			synchronized (segment) {
+				res += segment.size();
+			}
+		return res;
+	}
+
+	/**
+	 * Remove all entries, the counters are kept
+	 */
+	public void clear() {
+		for (Segment<K, V> segment : segments)
+			synchronized (segment) {
+				segment.clear();
+			}
+	}
+
+	/**
+	 * @return	the number of lookups that found a value
+	 */
+	public long hits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return	the number of lookups that did not find a value
+	 */
+	public long misses() {
+		return misses.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d entries, %d hits, %d misses", size(), hits(), misses());
+	}
+
+	private Segment<K, V> segmentFor(K key) {
+		int h = key.hashCode();
+		h ^= h >>> 16;
+		return segments[(h & 0x7FFFFFFF) % segments.length];
+	}
+
+	/*
+	 * a map in access order that removes its eldest entry when it grows beyond capacity
+	 */
+	private static class Segment<K, V> extends LinkedHashMap<K, V> {
+
+		private static final long serialVersionUID = -2771435209516826357L;
+
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			return size() > capacity;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package auxiliary;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+
+/**
+ * A non-negative integer kept as its residues modulo a fixed set of primes.
+ * Additions and multiplications only use long arithmetic, the exact value is
+ * reconstructed by the Chinese remainder theorem when it is asked for.
+ * The reconstruction is exact for values below the product of the primes (about 2^154).
+ * Residues of partial sums computed elsewhere can be merged by adding them.
+ * not thread safe
+ */
+public class ModularSum implements PartialSum, Serializable {
+
+	private static final long serialVersionUID = -6187009911446569217L;
+
+	/**
+	 * The moduli, primes below 2^31 so that the product of two residues fits in a long
+	 */
+	public static final long[] PRIMES = {
+		2147483647L, 2147483629L, 2147483587L, 2147483579L, 2147483563L
+	};
+
+	/*
+	 * POW2[i][k] = 2^k mod PRIMES[i]
+	 */
+	private static final int POW2SIZE = 1024;
+	private static final long[][] POW2 = new long[PRIMES.length][POW2SIZE];
+	static {
+		for (int i = 0; i < PRIMES.length; i++) {
+			POW2[i][0] = 1L;
+			for (int k = 1; k < POW2SIZE; k++)
+				POW2[i][k] = (POW2[i][k - 1] << 1) % PRIMES[i];
+		}
+	}
+
+	private final long[] residues;
+
+	/**
+	 * Create a sum with value 0
+	 */
+	public ModularSum() {
+		residues = new long[PRIMES.length];
+	}
+
+	/**
+	 * Create a sum from its residues
+	 *
+	 * @param 	residues
+	 * 			the residues modulo PRIMES, as returned by {@link #toLongArray()}
+	 */
+	public ModularSum(long[] residues) {
+		if (residues.length != PRIMES.length)
+			throw new IllegalArgumentException("Expected " + PRIMES.length + " residues");
+		this.residues = residues.clone();
+	}
+
+	/********************************************************
+	 * Accumulation											*
+	 ********************************************************/
+
+	/**
+	 * Add a number to this sum
+	 *
+	 * @param 	a
+	 * 			the number to add
+	 */
+	public void add(long a) {
+		for (int i = 0; i < PRIMES.length; i++)
+			residues[i] = (residues[i] + mod(a, PRIMES[i])) % PRIMES[i];
+	}
+
+	/**
+	 * Add a product to this sum
+	 *
+	 * @param 	a
+	 * 			the first factor
+	 * @param 	b
+	 * 			the second factor
+	 */
+	public void addProduct(long a, long b) {
+		for (int i = 0; i < PRIMES.length; i++) {
+			long p = PRIMES[i];
+			residues[i] = (residues[i] + mod(a, p) * mod(b, p) % p) % p;
+		}
+	}
+
+	/**
+	 * Add a * 2^k to this sum
+	 *
+	 * @param 	a
+	 * 			the number to add
+	 * @param 	k
+	 * 			the exponent of the power of two, non negative
+	 */
+	public void addShifted(long a, int k) {
+		for (int i = 0; i < PRIMES.length; i++) {
+			long p = PRIMES[i];
+			residues[i] = (residues[i] + mod(a, p) * pow2(i, k) % p) % p;
+		}
+	}
+
+	/**
+	 * Add an arbitrary integer to this sum
+	 *
+	 * @param 	a
+	 * 			the number to add
+	 */
+	public void add(BigInteger a) {
+		for (int i = 0; i < PRIMES.length; i++)
+			residues[i] = (residues[i] + a.mod(BigInteger.valueOf(PRIMES[i])).longValue()) % PRIMES[i];
+	}
+
+	/**
+	 * Add another sum to this sum
+	 *
+	 * @param 	other
+	 * 			the sum to add
+	 */
+	public void add(ModularSum other) {
+		for (int i = 0; i < PRIMES.length; i++)
+			residues[i] = (residues[i] + other.residues[i]) % PRIMES[i];
+	}
+
+	@Override
+	public void add(PartialSum other) {
+		add((ModularSum) other);
+	}
+
+	@Override
+	public PartialSum zero() {
+		return new ModularSum();
+	}
+
+	/**
+	 * Multiply this sum by a number
+	 *
+	 * @param 	a
+	 * 			the factor
+	 */
+	public void multiply(long a) {
+		for (int i = 0; i < PRIMES.length; i++)
+			residues[i] = residues[i] * mod(a, PRIMES[i]) % PRIMES[i];
+	}
+
+	/********************************************************
+	 * Conversion											*
+	 ********************************************************/
+
+	/**
+	 * @return	the residues of this sum modulo PRIMES
+	 * @see		#ModularSum(long[])
+	 */
+	public long[] toLongArray() {
+		return residues.clone();
+	}
+
+	/**
+	 * Reconstruct the value of this sum
+	 *
+	 * @return	the unique x in [0, product of PRIMES) with x = residues[i] modulo PRIMES[i] for all i
+	 */
+	public BigInteger toBigInteger() {
+		BigInteger modulus = BigInteger.ONE;
+		for (long p : PRIMES)
+			modulus = modulus.multiply(BigInteger.valueOf(p));
+		BigInteger res = BigInteger.ZERO;
+		for (int i = 0; i < PRIMES.length; i++) {
+			BigInteger p = BigInteger.valueOf(PRIMES[i]);
+			BigInteger m = modulus.divide(p);
+			BigInteger term = BigInteger.valueOf(residues[i]).multiply(m.modInverse(p)).mod(p);
+			res = res.add(term.multiply(m));
+		}
+		return res.mod(modulus);
+	}
+
+	@Override
+	public String toString() {
+		return toBigInteger().toString();
+	}
+
+	/********************************************************
+	 * Modular arithmetic									*
+	 ********************************************************/
+
+	private static long mod(long a, long p) {
+		long r = a % p;
+		return r < 0 ? r + p : r;
+	}
+
+	private static long pow2(int i, int k) {
+		if (k < POW2SIZE) return POW2[i][k];
+		long p = PRIMES[i];
+		long res = 1L, base = 2L;
+		for (; k > 0; k >>= 1) {
+			if ((k & 1) != 0) res = res * base % p;
+			base = base * base % p;
+		}
+		return res;
+	}
+}
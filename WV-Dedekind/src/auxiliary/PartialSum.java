@@ -0,0 +1,81 @@
+package auxiliary;
+
+import java.math.BigInteger;
+
+/**
+ * A mutable integer that accumulates the terms of a sum with long arithmetic.
+ * The drivers choose the representation with {@link Arithmetic}: the words of a 192-bit integer,
+ * or residues modulo a few primes that are combined by the Chinese remainder theorem.
+ * Partial sums computed elsewhere are shipped with toLongArray() and merged by adding them,
+ * both sums should have the same representation.
+ */
+public interface PartialSum {
+
+	/**
+	 * Add a number to this sum
+	 *
+	 * @param 	a
+	 * 			the number to add
+	 */
+	void add(long a);
+
+	/**
+	 * Add a product to this sum
+	 *
+	 * @param 	a
+	 * 			the first factor
+	 * @param 	b
+	 * 			the second factor
+	 */
+	void addProduct(long a, long b);
+
+	/**
+	 * Add a * 2^k to this sum
+	 *
+	 * @param 	a
+	 * 			the number to add
+	 * @param 	k
+	 * 			the exponent of the power of two, non negative
+	 */
+	void addShifted(long a, int k);
+
+	/**
+	 * Add an arbitrary integer to this sum
+	 *
+	 * @param 	a
+	 * 			the number to add
+	 */
+	void add(BigInteger a);
+
+	/**
+	 * Add another sum to this sum
+	 *
+	 * @param 	other
+	 * 			a sum with the same representation as this sum
+	 */
+	void add(PartialSum other);
+
+	/**
+	 * Multiply this sum by a number
+	 *
+	 * @param 	a
+	 * 			the factor
+	 */
+	void multiply(long a);
+
+	/**
+	 * @return	a new sum with value 0 and the same representation as this sum
+	 */
+	PartialSum zero();
+
+	/**
+	 * @return	the words of this sum, to be sent to another node
+	 * @see		Arithmetic#fromLongArray(long[])
+	 */
+	long[] toLongArray();
+
+	/**
+	 * @return	the value of this sum
+	 */
+	BigInteger toBigInteger();
+}
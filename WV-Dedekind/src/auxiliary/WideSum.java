@@ -0,0 +1,333 @@
+package auxiliary;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+
+/**
+ * A mutable integer of 192 bits in two's complement, kept in three longs.
+ * Additions, multiplications and multiply-accumulates only use long arithmetic with carries.
+ * If a result does not fit in 192 bits, the sum continues as a BigInteger,
+ * so the value is always exact.
+ * 192 bits are more than enough for the partial sums of D(8) (below 2^77) and D(9).
+ * not thread safe
+ */
+public class WideSum implements PartialSum, Serializable {
+
+	private static final long serialVersionUID = 3542155838806919455L;
+
+	/**
+	 * The number of longs in the fixed width representation
+	 */
+	public static final int WORDS = 3;
+
+	/*
+	 * the value is (w2, w1, w0) unless big != null, in which case the value is big
+	 */
+	private long w0, w1, w2;
+	private BigInteger big;
+
+	/**
+	 * Create a sum with value 0
+	 */
+	public WideSum() {
+	}
+
+	/**
+	 * Create a sum from its words
+	 *
+	 * @param 	words
+	 * 			the two's complement representation of the value, least significant word first,
+	 * 			as returned by {@link #toLongArray()}
+	 */
+	public WideSum(long[] words) {
+		if (words.length == 0)
+			return;
+		if (words.length <= WORDS) {
+			long ext = words[words.length - 1] >> 63;
+			w0 = words[0];
+			w1 = words.length > 1 ? words[1] : ext;
+			w2 = words.length > 2 ? words[2] : ext;
+		} else {
+			byte[] bytes = new byte[8 * words.length];
+			for (int w = 0; w < words.length; w++)
+				for (int b = 0; b < 8; b++)
+					bytes[bytes.length - 1 - 8 * w - b] = (byte) (words[w] >>> (8 * b));
+			set(new BigInteger(bytes));
+		}
+	}
+
+	/********************************************************
+	 * Accumulation											*
+	 ********************************************************/
+
+	/**
+	 * Add a number to this sum
+	 *
+	 * @param 	a
+	 * 			the number to add
+	 */
+	public void add(long a) {
+		long ext = a >> 63;
+		add(a, ext, ext);
+	}
+
+	/**
+	 * Add a product to this sum
+	 *
+	 * @param 	a
+	 * 			the first factor
+	 * @param 	b
+	 * 			the second factor
+	 */
+	public void addProduct(long a, long b) {
+		long lo = a * b;
+		long hi = multiplyHigh(a, b);
+		add(lo, hi, hi >> 63);
+	}
+
+	/**
+	 * Add a * 2^k to this sum
+	 *
+	 * @param 	a
+	 * 			the number to add
+	 * @param 	k
+	 * 			the exponent of the power of two, non negative
+	 */
+	public void addShifted(long a, int k) {
+		addProductShifted(a, 1L, k);
+	}
+
+	/**
+	 * Add a * b * 2^k to this sum
+	 *
+	 * @param 	a
+	 * 			the first factor
+	 * @param 	b
+	 * 			the second factor
+	 * @param 	k
+	 * 			the exponent of the power of two, non negative
+	 */
+	public void addProductShifted(long a, long b, int k) {
+		long p0 = a * b;
+		long p1 = multiplyHigh(a, b);
+		int bits = p1 == p0 >> 63 ? bitLength(p0) : 64 + bitLength(p1);
+		if (bits + k >= 64 * WORDS) {
+			add(BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).shiftLeft(k));
+			return;
+		}
+		long p2 = p1 >> 63;
+		if (k >= 128) {
+			add(0L, 0L, p0 << (k - 128));
+		} else if (k >= 64) {
+			int j = k - 64;
+			add(0L, p0 << j, j == 0 ? p1 : (p1 << j) | (p0 >>> (64 - j)));
+		} else if (k > 0) {
+			add(p0 << k, (p1 << k) | (p0 >>> (64 - k)), (p2 << k) | (p1 >>> (64 - k)));
+		} else {
+			add(p0, p1, p2);
+		}
+	}
+
+	/**
+	 * Add an arbitrary integer to this sum
+	 *
+	 * @param 	a
+	 * 			the number to add
+	 */
+	public void add(BigInteger a) {
+		if (big == null && a.bitLength() < 64) {
+			add(a.longValue());
+		} else {
+			set(toBigInteger().add(a));
+		}
+	}
+
+	/**
+	 * Add another sum to this sum
+	 *
+	 * @param 	other
+	 * 			the sum to add
+	 */
+	public void add(WideSum other) {
+		if (big == null && other.big == null)
+			add(other.w0, other.w1, other.w2);
+		else
+			set(toBigInteger().add(other.toBigInteger()));
+	}
+
+	@Override
+	public void add(PartialSum other) {
+		add((WideSum) other);
+	}
+
+	@Override
+	public PartialSum zero() {
+		return new WideSum();
+	}
+
+	/**
+	 * Multiply this sum by a number
+	 *
+	 * @param 	a
+	 * 			the factor
+	 */
+	public void multiply(long a) {
+		if (big != null) {
+			set(big.multiply(BigInteger.valueOf(a)));
+			return;
+		}
+		// the magnitudes are multiplied word by word, the sign is applied afterwards
+		boolean negative = (w2 < 0) != (a < 0);
+		long m0 = w0, m1 = w1, m2 = w2;
+		if (w2 < 0) {
+			m0 = -w0;
+			m1 = ~w1 + (m0 == 0 ? 1 : 0);
+			m2 = ~w2 + (m0 == 0 && m1 == 0 ? 1 : 0);
+		}
+		long b = a < 0 ? -a : a;
+		long r0 = m0 * b;
+		long r1 = m1 * b;
+		long carry = unsignedMultiplyHigh(m0, b);
+		r1 += carry;
+		carry = unsignedMultiplyHigh(m1, b) + (lessUnsigned(r1, carry) ? 1 : 0);
+		long r2 = m2 * b + carry;
+		long top = unsignedMultiplyHigh(m2, b) + (lessUnsigned(r2, carry) ? 1 : 0);
+		if (top != 0 || r2 < 0) {
+			set(toBigInteger().multiply(BigInteger.valueOf(a)));
+			return;
+		}
+		if (negative) {
+			r0 = -r0;
+			r1 = ~r1 + (r0 == 0 ? 1 : 0);
+			r2 = ~r2 + (r0 == 0 && r1 == 0 ? 1 : 0);
+		}
+		w0 = r0;
+		w1 = r1;
+		w2 = r2;
+	}
+
+	/********************************************************
+	 * Conversion											*
+	 ********************************************************/
+
+	/**
+	 * @return	true iff the value no longer fits in the fixed width representation
+	 */
+	public boolean isOverflowed() {
+		return big != null;
+	}
+
+	/**
+	 * @return	the two's complement representation of this sum, least significant word first,
+	 * 			WORDS longs unless the value does not fit in them
+	 * @see		#WideSum(long[])
+	 */
+	public long[] toLongArray() {
+		if (big == null)
+			return new long[]{w0, w1, w2};
+		long[] res = new long[big.bitLength() / 64 + 1];
+		byte[] bytes = big.toByteArray();
+		for (int i = 0; i < 8 * res.length; i++) {
+			long b = i < bytes.length ? bytes[bytes.length - 1 - i] & 0xFFL : (big.signum() < 0 ? 0xFFL : 0L);
+			res[i / 8] |= b << (8 * (i % 8));
+		}
+		return res;
+	}
+
+	/**
+	 * @return	the value of this sum
+	 */
+	public BigInteger toBigInteger() {
+		if (big != null)
+			return big;
+		byte[] bytes = new byte[8 * WORDS];
+		long[] words = {w2, w1, w0};
+		for (int w = 0; w < WORDS; w++)
+			for (int b = 0; b < 8; b++)
+				bytes[8 * w + b] = (byte) (words[w] >>> (56 - 8 * b));
+		return new BigInteger(bytes);
+	}
+
+	@Override
+	public String toString() {
+		return toBigInteger().toString();
+	}
+
+	/********************************************************
+	 * Fixed width arithmetic								*
+	 ********************************************************/
+
+	/*
+	 * add (c, b, a) to the value, switching to a BigInteger on overflow
+	 */
+	private void add(long a, long b, long c) {
+		if (big != null) {
+			set(big.add(new WideSum(new long[]{a, b, c}).toBigInteger()));
+			return;
+		}
+		long r0 = w0 + a;
+		long carry = lessUnsigned(r0, a) ? 1L : 0L;
+		long r1 = w1 + b + carry;
+		carry = (carry == 0 ? lessUnsigned(r1, b) : !lessUnsigned(b, r1)) ? 1L : 0L;
+		long r2 = w2 + c + carry;
+		if (((w2 ^ r2) & (c ^ r2)) < 0) {
+			// both operands have the same sign and the result has the other one
+			BigInteger res = toBigInteger().add(new WideSum(new long[]{a, b, c}).toBigInteger());
+			w0 = w1 = w2 = 0L;
+			big = res;
+			return;
+		}
+		w0 = r0;
+		w1 = r1;
+		w2 = r2;
+	}
+
+	/*
+	 * set the value, in the fixed width representation if it fits
+	 */
+	private void set(BigInteger value) {
+		if (value.bitLength() < 64 * WORDS) {
+			big = null;
+			w0 = value.longValue();
+			w1 = value.shiftRight(64).longValue();
+			w2 = value.shiftRight(128).longValue();
+		} else {
+			w0 = w1 = w2 = 0L;
+			big = value;
+		}
+	}
+
+	/*
+	 * a < b as unsigned numbers
+	 */
+	private static boolean lessUnsigned(long a, long b) {
+		return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+	}
+
+	/*
+	 * the number of bits of a, sign bit excluded
+	 */
+	private static int bitLength(long a) {
+		return 64 - Long.numberOfLeadingZeros(a ^ (a >> 63));
+	}
+
+	/*
+	 * the high long of the signed 128 bit product a * b
+	 */
+	private static long multiplyHigh(long a, long b) {
+		// correct the unsigned product for the signs
+		return unsignedMultiplyHigh(a, b) - ((a >> 63) & b) - ((b >> 63) & a);
+	}
+
+	/*
+	 * the high long of the unsigned 128 bit product a * b
+	 */
+	private static long unsignedMultiplyHigh(long a, long b) {
+		long a0 = a & 0xFFFFFFFFL, a1 = a >>> 32;
+		long b0 = b & 0xFFFFFFFFL, b1 = b >>> 32;
+		long lo = a0 * b0;
+		long mid1 = a1 * b0 + (lo >>> 32);
+		long mid2 = a0 * b1 + (mid1 & 0xFFFFFFFFL);
+		return a1 * b1 + (mid1 >>> 32) + (mid2 >>> 32);
+	}
+}
@@ -11,6 +11,7 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 
 import amfsmall.AntiChainInterval;
+import amfsmall.PermutationGroup;
 import amfsmall.SmallAntiChain;
 import amfsmall.SmallBasicSet;
 
@@ -23,6 +24,7 @@ public class SetsPoset extends SimplePosetSize<SmallBasicSet> {
 	private SortedMap<SmallBasicSet,SortedSet<SmallBasicSet>> after;
 	private int minSize;
 	private int maxSize;
+	private PermutationGroup symmetries;
 	
 	/**
 	 * empty poset: the set is empty
@@ -45,7 +47,6 @@ public class SetsPoset extends SimplePosetSize<SmallBasicSet> {
 		predecessors = new TreeMap<SmallBasicSet,SortedSet<SmallBasicSet>> ();
 		before = new TreeMap<SmallBasicSet,SortedSet<SmallBasicSet>> ();
 		after = new TreeMap<SmallBasicSet,SortedSet<SmallBasicSet>> ();
-//		symmetries = fint.symmetryGroup();
 		
 		SmallAntiChain h = fint.getTop();
 		if (h.gt(fint.getBottom())) {
@@ -78,6 +79,38 @@ public class SetsPoset extends SimplePosetSize<SmallBasicSet> {
 		buildCessors();
 	}
 
+	/**
+	 * Build a poset of sets from an interval of AC with a group of its automorphisms,
+	 * the lattice size is then computed by counting orbits of the choices at the lowest levels
+	 * 
+	 * @param 	fint
+	 * @param 	symmetries
+	 * 			permutations that map fint.getBottom() and fint.getTop() onto themselves
+	 */
+	public SetsPoset(AntiChainInterval fint, PermutationGroup symmetries) {
+		this(fint);
+		this.symmetries = symmetries;
+	}
+
+	/**
+	 * Set the group used by getLatticeSize()
+	 * 
+	 * @param 	symmetries
+	 * 			permutations that map the bottom and the top of the interval onto themselves, or null
+	 */
+	public void setSymmetries(PermutationGroup symmetries) {
+		this.symmetries = symmetries;
+	}
+
+	/**
+	 * A group is only used at a level l with l + 4 <= getMaxLevel(), and the first level is at least 1
+	 * 
+	 * @return	true iff getLatticeSize() can use a group of symmetries of this poset
+	 */
+	public boolean usesSymmetries() {
+		return getMaxLevel() >= 5;
+	}
+
 	/**
 	 * after the level has been initialised, build the successor and predecessor structures
 	 */
@@ -228,13 +261,20 @@ public class SetsPoset extends SimplePosetSize<SmallBasicSet> {
 			}
 		}
 		
-		long res = getLatticeSize(exp,prepredec,new HashSet<SmallBasicSet>(),firstLevel);
+		long res = getLatticeSize(exp,prepredec,new HashSet<SmallBasicSet>(),firstLevel,symmetries);
 		return res;
 	}
 	
+	/*
+	 * the group, if not null, consists of automorphisms of this poset that map lowerLevel onto itself:
+	 * then only the choice alfa that is the smallest of its orbit is counted, weighted with the size of the orbit,
+	 * and the stabilizer of alfa is passed on to the next levels.
+	 * Testing a choice costs an image per permutation, so the group is only used
+	 * as long as at least two levels of choices follow
+	 */
 	private long getLatticeSize(int exp,
 			Map<SmallBasicSet, Set<SmallBasicSet>> prepredec,
-			Set<SmallBasicSet> lowerLevel, int l) {
+			Set<SmallBasicSet> lowerLevel, int l, PermutationGroup group) {
 		if (l > getMaxLevel()) {
 			return pow(exp);
 		}
@@ -247,9 +287,40 @@ public class SetsPoset extends SimplePosetSize<SmallBasicSet> {
 			}
 		}
 		Iterator<Set<SmallBasicSet>> it = getSetIterator(thisLevel);
+		boolean symmetric = group != null && group.size() > 1 && l + 4 <= getMaxLevel() && thisLevel.size() < Long.SIZE;
+		// the permutations of the group as permutations of the positions of the sets in thisLevel
+		Map<SmallBasicSet,Integer> position = new TreeMap<SmallBasicSet,Integer>();
+		int[][] images = null;
+		if (symmetric) {
+			SmallBasicSet[] sets = thisLevel.toArray(new SmallBasicSet[thisLevel.size()]);
+			for (int i = 0; i < sets.length; i++)
+				position.put(sets[i], i);
+			images = new int[group.size()][sets.length];
+			for (int p = 0; p < group.size(); p++)
+				for (int i = 0; i < sets.length; i++)
+					images[p][i] = position.get(group.image(p, sets[i]));
+		}
 		long res = 0L;
 		while(it.hasNext()) {
 			Set<SmallBasicSet> alfa = it.next();
+			long orbit = 1;
+			PermutationGroup stabilizer = null;
+			if (symmetric) {
+				long mask = 0L;
+				for (SmallBasicSet s : alfa)
+					mask |= 1L << position.get(s);
+				long fixed = 0;
+				for (int p = 0; p < images.length && orbit > 0; p++) {
+					long image = 0L;
+					for (long bits = mask; bits != 0; bits &= bits - 1)
+						image |= 1L << images[p][Long.numberOfTrailingZeros(bits)];
+					if (image < mask) orbit = 0;
+					else if (image == mask) fixed++;
+				}
+				if (orbit == 0) continue;
+				orbit = images.length / fixed;
+				stabilizer = group.stabilizer(new SmallAntiChain(alfa));
+			}
 			goodSuccessors.clear();
 			if (l+1 <= this.getMaxLevel()) {
 				Set<SmallBasicSet> levelAbove = getLevel(l+1);
@@ -264,7 +335,7 @@ public class SetsPoset extends SimplePosetSize<SmallBasicSet> {
 			}
 			int myExp = goodSuccessors.size();
 			int lowExp = allPredecessors.size();
-			res += pow(exp - lowExp)*getLatticeSize(myExp,prepredec,alfa,l+2);
+			res += orbit*pow(exp - lowExp)*getLatticeSize(myExp,prepredec,alfa,l+2,stabilizer);
 		}
 		return res;
 	}